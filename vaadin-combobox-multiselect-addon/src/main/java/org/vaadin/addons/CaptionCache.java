@@ -0,0 +1,139 @@
+package org.vaadin.addons;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.vaadin.ui.ItemCaptionGenerator;
+
+/**
+ * Bounded cache of the captions of a {@link ComboBoxMultiselect}, so an expensive item caption generator runs at most once per item until the item
+ * is refreshed. The least recently used caption is dropped when the cache is full. With weak keys the cache does not keep items alive, it is then
+ * cleared completely when full.
+ * <p>
+ * The cached captions are not serialized.
+ *
+ * @see ComboBoxMultiselect#setCaptionCacheSize(int)
+ *
+ * @param <T> item type
+ */
+public final class CaptionCache<T> implements ItemCaptionGenerator<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ItemCaptionGenerator<T> captionGenerator;
+    private final int maximumSize;
+    private final boolean weakKeys;
+
+    private transient Map<T, String> captions;
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param captionGenerator the caption generator to cache, not {@code null}
+     * @param maximumSize the maximum number of cached captions
+     * @param weakKeys {@code true} to hold the items weakly
+     */
+    CaptionCache(final ItemCaptionGenerator<T> captionGenerator, final int maximumSize, final boolean weakKeys) {
+        this.captionGenerator = captionGenerator;
+        this.maximumSize = maximumSize;
+        this.weakKeys = weakKeys;
+    }
+
+    /**
+     * Checks whether this cache caches the given caption generator.
+     *
+     * @param captionGenerator the caption generator
+     * @return {@code true} if the captions of exactly this generator are cached
+     */
+    boolean isCacheOf(final ItemCaptionGenerator<T> captionGenerator) {
+        return this.captionGenerator == captionGenerator;
+    }
+
+    @Override
+    public String apply(final T item) {
+        if (item == null) {
+            return this.captionGenerator.apply(item);
+        }
+
+        final Map<T, String> cachedCaptions = getCaptions();
+        final String cachedCaption = cachedCaptions.get(item);
+        if (cachedCaption != null || cachedCaptions.containsKey(item)) {
+            this.hitCount++;
+            return cachedCaption;
+        }
+
+        this.missCount++;
+        final String caption = this.captionGenerator.apply(item);
+        if (this.weakKeys && cachedCaptions.size() >= this.maximumSize) {
+            cachedCaptions.clear();
+        }
+        cachedCaptions.put(item, caption);
+        return caption;
+    }
+
+    private Map<T, String> getCaptions() {
+        if (this.captions == null) {
+            this.captions = this.weakKeys ? new WeakHashMap<>() : new LinkedHashMap<T, String>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<T, String> eldest) {
+                    return size() > CaptionCache.this.maximumSize;
+                }
+            };
+        }
+        return this.captions;
+    }
+
+    /**
+     * Drops the cached caption of the given item.
+     *
+     * @param item the item whose caption has changed
+     */
+    public void invalidate(final T item) {
+        if (this.captions != null) {
+            this.captions.remove(item);
+        }
+    }
+
+    /**
+     * Drops all cached captions.
+     */
+    public void invalidateAll() {
+        if (this.captions != null) {
+            this.captions.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached captions.
+     *
+     * @return the number of cached captions
+     */
+    public int getSize() {
+        return this.captions != null ? this.captions.size() : 0;
+    }
+
+    /**
+     * Returns how often a caption was found in the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * Returns how often the caption generator had to be called.
+     *
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return this.missCount;
+    }
+}
@@ -0,0 +1,685 @@
+package org.vaadin.addons;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import com.vaadin.server.SerializablePredicate;
+import com.vaadin.server.SerializableSupplier;
+import com.vaadin.ui.ItemCaptionGenerator;
+
+/**
+ * Immutable and thread-safe index of the lower case captions of the items of an in-memory data provider. Captions are generated and normalized once when the index is
+ * built, so filtering does not have to run the caption generator and the case conversion again for every item on every keystroke.
+ * <p>
+ * For substring search the index additionally builds trigram postings on first use: the items containing a filter text are found among the items
+ * containing its rarest trigram instead of scanning all captions. For word prefix search a sorted list of all words is built, the items having words
+ * starting with the rarest prefix of the filter text are checked for the other prefixes. The lazily built parts may be built more than once when used
+ * concurrently, but are never seen half built.
+ *
+ * @param <T> item type
+ */
+final class CaptionIndex<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final Collection<T> source;
+    private final List<T> items;
+    private final String[] normalizedCaptions;
+    private final Map<T, Integer> positions;
+    private final ItemCaptionGenerator<T> captionGenerator;
+    private final Locale locale;
+
+    /**
+     * Positions of the items containing a trigram, built on first use.
+     */
+    private volatile Map<Long, int[]> trigramPostings;
+
+    /**
+     * Sorted words of the captions with the positions of the items containing them, built on first use.
+     */
+    private volatile WordPrefixIndex wordPrefixIndex;
+
+    /**
+     * Positions of the items in caption order and the rank of the item at each position, built on first use.
+     */
+    private volatile int[] rankOrder;
+    private volatile int[] ranks;
+
+    /**
+     * The last filter text and its normalized form, in one array so that concurrent readers always see a matching pair.
+     */
+    private transient volatile String[] lastFilterText;
+
+    /**
+     * Builds the index for the given items.
+     *
+     * @param items the items to index
+     * @param captionGenerator the caption generator of the component
+     * @param locale the locale used for the case conversion, {@code null} for {@link Locale#ROOT}
+     */
+    CaptionIndex(final Collection<T> items, final ItemCaptionGenerator<T> captionGenerator, final Locale locale) {
+        this.source = items;
+        this.items = new ArrayList<>(items);
+        this.captionGenerator = captionGenerator;
+        this.locale = locale != null ? locale : Locale.ROOT;
+        this.normalizedCaptions = new String[this.items.size()];
+        this.positions = new HashMap<>(this.items.size() * 4 / 3 + 1);
+        for (int i = 0; i < this.normalizedCaptions.length; i++) {
+            final T item = this.items.get(i);
+            this.normalizedCaptions[i] = normalize(captionGenerator.apply(item));
+            this.positions.putIfAbsent(item, i);
+        }
+    }
+
+    /**
+     * Returns the locale the captions were normalized with.
+     *
+     * @return the locale, not {@code null}
+     */
+    Locale getLocale() {
+        return this.locale;
+    }
+
+    /**
+     * Checks whether this index was built from the given collection.
+     *
+     * @param items the collection
+     * @return {@code true} if the index was built from exactly this collection
+     */
+    boolean isIndexOf(final Collection<T> items) {
+        return this.source == items;
+    }
+
+    /**
+     * Returns the number of indexed items.
+     *
+     * @return the number of items
+     */
+    int size() {
+        return this.normalizedCaptions.length;
+    }
+
+    /**
+     * Returns the item at the given position.
+     *
+     * @param position the position in the indexed collection
+     * @return the item
+     */
+    T getItem(final int position) {
+        return this.items.get(position);
+    }
+
+    /**
+     * Returns the position of the given item.
+     *
+     * @param item the item
+     * @return the position in the indexed collection, {@code -1} if the item was not indexed
+     */
+    int indexOf(final T item) {
+        final Integer position = this.positions.get(item);
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Builds the sort order and the search indexes that are otherwise built on first use.
+     *
+     * @return this index
+     */
+    CaptionIndex<T> prepare() {
+        getRankOrder();
+        getTrigramPostings();
+        getWordPrefixIndex();
+        return this;
+    }
+
+    /**
+     * Returns the rank of the given item in the order of the normalized captions. Items with equal normalized captions have the same rank.
+     *
+     * @param item the item
+     * @return the rank, {@code -1} if the item was not indexed
+     */
+    int getRank(final T item) {
+        final int position = indexOf(item);
+        return position >= 0 ? getRanks()[position] : -1;
+    }
+
+    /**
+     * Returns the rank of the item at the given position in the order of the normalized captions.
+     *
+     * @param position the position in the indexed collection
+     * @return the rank
+     */
+    int getRankAt(final int position) {
+        return getRanks()[position];
+    }
+
+    /**
+     * Returns the positions of all items ordered by their normalized captions. The returned array must not be modified.
+     *
+     * @return the positions in caption order
+     */
+    int[] getRankOrder() {
+        if (this.rankOrder == null) {
+            final int[] order = IntStream.range(0, size())
+                    .boxed()
+                    .sorted(Comparator.comparing(position -> this.normalizedCaptions[position]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            // equal captions get the same rank, so comparing ranks is the same as comparing the normalized captions
+            final int[] positionRanks = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                positionRanks[order[i]] = i > 0 && this.normalizedCaptions[order[i]].equals(this.normalizedCaptions[order[i - 1]]) ? positionRanks[order[i - 1]]
+                        : i;
+            }
+            this.ranks = positionRanks;
+            this.rankOrder = order;
+        }
+        return this.rankOrder;
+    }
+
+    private int[] getRanks() {
+        getRankOrder();
+        return this.ranks;
+    }
+
+    /**
+     * Orders the given positions by the normalized captions of their items.
+     *
+     * @param positions the positions
+     * @return a new array with the positions in caption order
+     */
+    int[] sortByRank(final int[] positions) {
+        if (positions.length == size()) {
+            return getRankOrder().clone();
+        }
+
+        // rank and position packed into one long, sorted without boxing
+        final int[] positionRanks = getRanks();
+        final long[] keys = new long[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            keys[i] = (long) positionRanks[positions[i]] << 32 | positions[i];
+        }
+        Arrays.sort(keys);
+
+        final int[] sorted = new int[positions.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = (int) keys[i];
+        }
+        return sorted;
+    }
+
+    /**
+     * Converts the given text to lower case with the locale of this index.
+     *
+     * @param text the text, may be {@code null}
+     * @return the lower case text, empty for {@code null}
+     */
+    String normalize(final String text) {
+        return text == null ? "" : text.toLowerCase(this.locale);
+    }
+
+    /**
+     * Returns the normalized caption of an item. Items added after building the index are normalized on every call.
+     *
+     * @param item the item
+     * @return the lower case caption, not {@code null}
+     */
+    String getNormalizedCaption(final T item) {
+        final int position = indexOf(item);
+        return position >= 0 ? this.normalizedCaptions[position] : normalize(this.captionGenerator.apply(item));
+    }
+
+    /**
+     * Checks whether the caption of the given item contains the filter text, ignoring case.
+     *
+     * @param item the item to test
+     * @param filterText the filter text as typed by the user
+     * @return {@code true} if the item matches
+     */
+    boolean contains(final T item, final String filterText) {
+        return getNormalizedCaption(item).contains(normalizeFilterText(filterText));
+    }
+
+    /**
+     * Finds the positions of all items whose caption contains the filter text, ignoring case.
+     *
+     * @param filterText the filter text as typed by the user
+     * @return the ascending positions of the matching items
+     */
+    int[] find(final String filterText) {
+        return find(filterText, MatchMode.INDEXED_SUBSTRING, null);
+    }
+
+    /**
+     * Finds the positions of all items matching the filter text.
+     *
+     * @param filterText the filter text as typed by the user
+     * @param mode how to match the filter text
+     * @param candidates ascending positions known to include all matching items, e.g. the result of a shorter filter text, or {@code null} for all
+     * @return the ascending positions of the matching items
+     */
+    int[] find(final String filterText, final MatchMode mode, final int[] candidates) {
+        final String normalizedFilterText = normalize(filterText);
+        if (mode == MatchMode.WORD_PREFIX) {
+            return findWordPrefixes(normalizedFilterText, candidates);
+        }
+        if (normalizedFilterText.isEmpty()) {
+            return candidates != null ? candidates
+                    : IntStream.range(0, size())
+                            .toArray();
+        }
+
+        int[] base = candidates;
+        if (mode == MatchMode.INDEXED_SUBSTRING && normalizedFilterText.length() >= 3) {
+            final int[] rarest = getRarestTrigramPositions(normalizedFilterText);
+            if (base == null || rarest.length < base.length) {
+                base = rarest;
+            }
+        }
+
+        final IntStream positions = base != null ? IntStream.of(base) : IntStream.range(0, size());
+        return positions.filter(position -> this.normalizedCaptions[position].contains(normalizedFilterText))
+                .toArray();
+    }
+
+    /**
+     * The same filter text is tested against every item, so the last normalized filter text is remembered.
+     */
+    private String normalizeFilterText(final String filterText) {
+        String[] last = this.lastFilterText;
+        if (last == null || !last[0].equals(filterText)) {
+            last = new String[] { filterText == null ? "" : filterText, normalize(filterText) };
+            this.lastFilterText = last;
+        }
+        return last[1];
+    }
+
+    private int[] getRarestTrigramPositions(final String normalizedFilterText) {
+        final Map<Long, int[]> postings = getTrigramPostings();
+
+        int[] rarest = null;
+        for (int i = 0; i + 3 <= normalizedFilterText.length(); i++) {
+            final int[] trigramPositions = postings.get(trigram(normalizedFilterText, i));
+            if (trigramPositions == null) {
+                return NO_POSITIONS;
+            }
+            if (rarest == null || trigramPositions.length < rarest.length) {
+                rarest = trigramPositions;
+            }
+        }
+        return rarest;
+    }
+
+    private Map<Long, int[]> getTrigramPostings() {
+        if (this.trigramPostings == null) {
+            this.trigramPostings = buildPostings(CaptionIndex::trigrams);
+        }
+        return this.trigramPostings;
+    }
+
+    private static Set<Long> trigrams(final String caption) {
+        final Set<Long> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= caption.length(); i++) {
+            trigrams.add(trigram(caption, i));
+        }
+        return trigrams;
+    }
+
+    private static long trigram(final String text, final int offset) {
+        return (long) text.charAt(offset) << 32 | (long) text.charAt(offset + 1) << 16 | text.charAt(offset + 2);
+    }
+
+    /**
+     * Finds the positions of all items having a word starting with each word of the filter text, in any order and ignoring case.
+     *
+     * @param filterText the filter text as typed by the user
+     * @return the ascending positions of the matching items
+     */
+    int[] findWordPrefixes(final String filterText) {
+        return find(filterText, MatchMode.WORD_PREFIX, null);
+    }
+
+    private int[] findWordPrefixes(final String normalizedFilterText, final int[] candidates) {
+        final List<String> prefixes = new ArrayList<>(words(normalizedFilterText));
+        if (prefixes.isEmpty()) {
+            return candidates != null ? candidates
+                    : IntStream.range(0, size())
+                            .toArray();
+        }
+
+        // start with the rarest prefix and check the others on its few candidates only
+        final WordPrefixIndex wordIndex = getWordPrefixIndex();
+        prefixes.sort(Comparator.comparingInt(wordIndex::estimateCount));
+        final List<String> others;
+        final int[] base;
+        if (candidates != null && candidates.length <= wordIndex.estimateCount(prefixes.get(0))) {
+            others = prefixes;
+            base = candidates;
+        }
+        else {
+            others = prefixes.subList(1, prefixes.size());
+            base = wordIndex.find(prefixes.get(0));
+        }
+
+        return IntStream.of(base)
+                .filter(position -> others.stream()
+                        .allMatch(prefix -> hasWordPrefix(this.normalizedCaptions[position], prefix)))
+                .toArray();
+    }
+
+    /**
+     * Checks whether the caption of the given item has a word starting with each word of the filter text, ignoring case.
+     *
+     * @param item the item to test
+     * @param filterText the filter text as typed by the user
+     * @return {@code true} if the item matches
+     */
+    boolean containsWordPrefixes(final T item, final String filterText) {
+        final String caption = getNormalizedCaption(item);
+        return words(normalizeFilterText(filterText)).stream()
+                .allMatch(prefix -> hasWordPrefix(caption, prefix));
+    }
+
+    private WordPrefixIndex getWordPrefixIndex() {
+        if (this.wordPrefixIndex == null) {
+            this.wordPrefixIndex = new WordPrefixIndex(buildPostings(CaptionIndex::words));
+        }
+        return this.wordPrefixIndex;
+    }
+
+    /**
+     * Splits a normalized text into its distinct words, separated by anything but letters and digits.
+     */
+    private static Set<String> words(final String text) {
+        final Set<String> words = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            final boolean wordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordCharacter && start < 0) {
+                start = i;
+            }
+            else if (!wordCharacter && start >= 0) {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static boolean hasWordPrefix(final String caption, final String prefix) {
+        for (int i = caption.indexOf(prefix); i >= 0; i = caption.indexOf(prefix, i + 1)) {
+            if (i == 0 || !Character.isLetterOrDigit(caption.charAt(i - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the ascending positions of the items for every key of their captions.
+     */
+    private <K> Map<K, int[]> buildPostings(final Function<String, Set<K>> keys) {
+        // first pass counts the items per key, second pass fills the exactly sized arrays
+        final Map<K, int[]> counts = new HashMap<>();
+        for (final String caption : this.normalizedCaptions) {
+            for (final K key : keys.apply(caption)) {
+                counts.computeIfAbsent(key, k -> new int[1])[0]++;
+            }
+        }
+
+        final Map<K, int[]> postings = new HashMap<>(counts.size() * 4 / 3 + 1);
+        counts.forEach((key, count) -> {
+            postings.put(key, new int[count[0]]);
+            count[0] = 0;
+        });
+        for (int position = 0; position < this.normalizedCaptions.length; position++) {
+            for (final K key : keys.apply(this.normalizedCaptions[position])) {
+                postings.get(key)[counts.get(key)[0]++] = position;
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * The distinct words of all captions in sorted order, so the words starting with a prefix form a contiguous range.
+     */
+    private static final class WordPrefixIndex implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String[] words;
+        private final int[][] postings;
+
+        WordPrefixIndex(final Map<String, int[]> wordPostings) {
+            this.words = wordPostings.keySet()
+                    .toArray(new String[wordPostings.size()]);
+            Arrays.sort(this.words);
+            this.postings = new int[this.words.length][];
+            for (int i = 0; i < this.words.length; i++) {
+                this.postings[i] = wordPostings.get(this.words[i]);
+            }
+        }
+
+        /**
+         * Upper bound for the number of items having a word with the prefix.
+         */
+        int estimateCount(final String prefix) {
+            int count = 0;
+            for (int i = firstWord(prefix); i < this.words.length && this.words[i].startsWith(prefix); i++) {
+                count += this.postings[i].length;
+            }
+            return count;
+        }
+
+        /**
+         * Ascending positions of the items having a word with the prefix.
+         */
+        int[] find(final String prefix) {
+            final int first = firstWord(prefix);
+            int last = first;
+            while (last < this.words.length && this.words[last].startsWith(prefix)) {
+                last++;
+            }
+            if (last - first == 1) {
+                return this.postings[first];
+            }
+            return IntStream.range(first, last)
+                    .flatMap(i -> IntStream.of(this.postings[i]))
+                    .sorted()
+                    .distinct()
+                    .toArray();
+        }
+
+        private int firstWord(final String prefix) {
+            final int index = Arrays.binarySearch(this.words, prefix);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+
+    /**
+     * How a filter text is matched against the captions.
+     */
+    enum MatchMode {
+        /**
+         * The caption contains the filter text, checked for every item.
+         */
+        SUBSTRING,
+        /**
+         * The caption contains the filter text, only checked for the items containing the rarest trigram of the filter text.
+         */
+        INDEXED_SUBSTRING,
+        /**
+         * Every word of the filter text is the start of a word of the caption.
+         */
+        WORD_PREFIX;
+
+        /**
+         * Checks whether every item matching the longer filter text also matches the shorter one, e.g. when the user typed another character.
+         */
+        boolean narrows(final String normalizedFilterText, final String shorterNormalizedFilterText) {
+            return this == WORD_PREFIX ? normalizedFilterText.startsWith(shorterNormalizedFilterText)
+                    : normalizedFilterText.contains(shorterNormalizedFilterText);
+        }
+    }
+
+    /**
+     * Remembers the results of the last filters of a component, so that a filter extending one of them only has to check its matches instead of all
+     * items.
+     */
+    static final class RecentResults implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final int SIZE = 2;
+
+        private static final class Result implements Serializable {
+
+            private static final long serialVersionUID = 1L;
+
+            private final CaptionIndex<?> index;
+            private final MatchMode mode;
+            private final String normalizedFilterText;
+            private final int[] positions;
+
+            Result(final CaptionIndex<?> index, final MatchMode mode, final String normalizedFilterText, final int[] positions) {
+                this.index = index;
+                this.mode = mode;
+                this.normalizedFilterText = normalizedFilterText;
+                this.positions = positions;
+            }
+        }
+
+        private final LinkedList<Result> results = new LinkedList<>();
+
+        /**
+         * Returns the positions matching the filter text, narrowed from a recent result if possible.
+         */
+        <T> int[] find(final CaptionIndex<T> index, final MatchMode mode, final String filterText) {
+            final String normalizedFilterText = index.normalize(filterText);
+
+            // results of rebuilt indexes are useless
+            this.results.removeIf(result -> result.index != index);
+
+            Result base = null;
+            for (final Result result : this.results) {
+                if (result.mode == mode && mode.narrows(normalizedFilterText, result.normalizedFilterText)
+                        && (base == null || result.positions.length < base.positions.length)) {
+                    base = result;
+                }
+            }
+
+            final int[] positions;
+            if (base != null && base.normalizedFilterText.equals(normalizedFilterText)) {
+                positions = base.positions;
+                this.results.remove(base);
+            }
+            else {
+                positions = index.find(filterText, mode, base != null ? base.positions : null);
+            }
+
+            this.results.addFirst(new Result(index, mode, normalizedFilterText, positions));
+            if (this.results.size() > SIZE) {
+                this.results.removeLast();
+            }
+            return positions;
+        }
+    }
+
+    /**
+     * Filter for the items matching a filter text, answered by the current caption index. {@link IndexedListDataProvider} recognizes this filter and
+     * pages through the matching positions directly instead of testing every item.
+     *
+     * @param <T> item type
+     */
+    static final class Filter<T> implements SerializablePredicate<T> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SerializableSupplier<CaptionIndex<T>> indexSupplier;
+        private final String filterText;
+        private final MatchMode mode;
+        private final RecentResults recentResults;
+
+        private transient CaptionIndex<T> index;
+        private transient int[] matches;
+        private transient BitSet matchSet;
+
+        /**
+         * Constructs a filter.
+         *
+         * @param indexSupplier supplies the current caption index, rebuilt after data changes
+         * @param filterText the filter text as typed by the user
+         * @param mode how to match the filter text
+         * @param recentResults the recent results of the component to narrow down, {@code null} to always check all items
+         */
+        Filter(final SerializableSupplier<CaptionIndex<T>> indexSupplier, final String filterText, final MatchMode mode,
+                final RecentResults recentResults) {
+            this.indexSupplier = indexSupplier;
+            this.filterText = filterText;
+            this.mode = mode;
+            this.recentResults = recentResults;
+        }
+
+        /**
+         * Returns the caption index currently used, updating the matches if the index has been rebuilt.
+         *
+         * @return the caption index
+         */
+        CaptionIndex<T> getIndex() {
+            final CaptionIndex<T> currentIndex = this.indexSupplier.get();
+            if (currentIndex != this.index) {
+                this.index = currentIndex;
+                this.matches = null;
+                this.matchSet = null;
+            }
+            return currentIndex;
+        }
+
+        /**
+         * Returns the positions of the matching items in the current caption index.
+         *
+         * @return the ascending positions of the matching items
+         */
+        int[] getMatches() {
+            final CaptionIndex<T> currentIndex = getIndex();
+            if (this.matches == null) {
+                this.matches = this.recentResults != null ? this.recentResults.find(currentIndex, this.mode, this.filterText)
+                        : currentIndex.find(this.filterText, this.mode, null);
+            }
+            return this.matches;
+        }
+
+        @Override
+        public boolean test(final T item) {
+            final int[] currentMatches = getMatches();
+            final int position = this.index.indexOf(item);
+            if (position < 0) {
+                return this.mode == MatchMode.WORD_PREFIX ? this.index.containsWordPrefixes(item, this.filterText)
+                        : this.index.contains(item, this.filterText);
+            }
+            if (this.matchSet == null) {
+                this.matchSet = new BitSet(this.index.size());
+                for (final int match : currentMatches) {
+                    this.matchSet.set(match);
+                }
+            }
+            return this.matchSet.get(position);
+        }
+    }
+}
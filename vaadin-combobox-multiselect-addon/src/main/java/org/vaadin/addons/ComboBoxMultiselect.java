@@ -17,24 +17,27 @@
 package org.vaadin.addons;
 
 import java.io.Serializable;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.jsoup.nodes.Element;
+import org.vaadin.addons.client.ComboBoxMultiselectClientRpc;
 import org.vaadin.addons.client.ComboBoxMultiselectConstants;
 import org.vaadin.addons.client.ComboBoxMultiselectServerRpc;
 import org.vaadin.addons.client.ComboBoxMultiselectState;
@@ -42,7 +45,10 @@ import org.vaadin.addons.client.ComboBoxMultiselectState;
 import com.vaadin.data.HasFilterableDataProvider;
 import com.vaadin.data.HasValue;
 import com.vaadin.data.provider.CallbackDataProvider;
+import com.vaadin.data.provider.DataChangeEvent;
+import com.vaadin.data.provider.DataChangeEvent.DataRefreshEvent;
 import com.vaadin.data.provider.DataProvider;
+import com.vaadin.data.provider.DataGenerator;
 import com.vaadin.data.provider.ListDataProvider;
 import com.vaadin.data.provider.Query;
 import com.vaadin.event.FieldEvents;
@@ -57,13 +63,19 @@ import com.vaadin.server.ResourceReference;
 import com.vaadin.server.SerializableBiPredicate;
 import com.vaadin.server.SerializableConsumer;
 import com.vaadin.server.SerializableFunction;
+import com.vaadin.server.SerializablePredicate;
 import com.vaadin.server.SerializableToIntFunction;
 import com.vaadin.shared.Registration;
 import com.vaadin.shared.data.DataCommunicatorConstants;
+import com.vaadin.shared.ui.ListingJsonConstants;
 import com.vaadin.ui.AbstractMultiSelect;
+import com.vaadin.ui.Component;
 import com.vaadin.ui.IconGenerator;
+import com.vaadin.ui.ItemCaptionGenerator;
 import com.vaadin.ui.NativeSelect;
 import com.vaadin.ui.StyleGenerator;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
 import com.vaadin.ui.declarative.DesignAttributeHandler;
 import com.vaadin.ui.declarative.DesignContext;
 import com.vaadin.ui.declarative.DesignFormatter;
@@ -82,6 +94,24 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
 
     public static final Integer DEFAULT_PAGE_LENGTH = 10;
 
+    /**
+     * Default maximum number of items of an in-memory data provider for filtering in the browser.
+     */
+    public static final int DEFAULT_CLIENT_SIDE_FILTERING_THRESHOLD = 1000;
+
+    /**
+     * Default maximum length of the captions of the selected items shown in the text field.
+     */
+    public static final int DEFAULT_SELECTION_CAPTION_LENGTH = 100;
+
+    /**
+     * Shows the number of selected items and the captions that fit, e.g. "(10000) Alpha; Beta; \u2026".
+     */
+    private static final SelectionCaptionGenerator DEFAULT_SELECTION_CAPTION_GENERATOR = (selectedCount, captions) -> selectedCount == 0 ? ""
+            : "(" + selectedCount + ") " + StringUtils.join(captions, "; ") + (selectedCount > captions.size() ? "; \u2026" : "");
+
+    private static final int INDEX_OF_PAGE_SIZE = 500;
+
     /**
      * A callback method for fetching items. The callback is provided with a non-null string filter, offset index and limit.
      *
@@ -105,6 +135,24 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
         public Stream<T> fetchItems(String filter, int offset, int limit);
     }
 
+    /**
+     * A callback method for finding the first selected item, used by {@link ComboBoxMultiselect#setScrollToSelectedItem(boolean)}.
+     *
+     * @param <T> item (bean) type in ComboBoxMultiselect
+     */
+    @FunctionalInterface
+    public interface IndexOfCallback<T> extends Serializable {
+
+        /**
+         * Returns the index of the first of the given items among the items that match the given filter, in the order they are shown.
+         *
+         * @param filter a non-null filter string
+         * @param items the selected items, not empty
+         * @return the index of the first item, or {@code -1} if none of the items matches the filter
+         */
+        public int indexOfFirst(String filter, Set<T> items);
+    }
+
     /**
      * Handler that adds a new item based on user input when the new items allowed mode is active.
      *
@@ -118,11 +166,30 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
      * Generator that handles the value of the textfield when not selected.
      *
      * @since 8.0
+     * @deprecated joining the captions of all selected items does not scale, use {@link SelectionCaptionGenerator}
      */
+    @Deprecated
     @FunctionalInterface
     public interface InputTextFieldCaptionGenerator<T> extends SerializableFunction<List<T>, String> {
     }
 
+    /**
+     * Generator of the text shown in the text field for the selected items. It only gets the captions of the first selected items that fit into
+     * {@link ComboBoxMultiselect#setSelectionCaptionLength(int)}, so the text does not grow with the selection.
+     */
+    @FunctionalInterface
+    public interface SelectionCaptionGenerator extends Serializable {
+
+        /**
+         * Generates the text for the selected items.
+         *
+         * @param selectedCount the number of selected items
+         * @param captions the captions of the first selected items, in selection order, not {@code null}
+         * @return the text shown in the text field, not {@code null}
+         */
+        String apply(int selectedCount, List<String> captions);
+    }
+
     /**
      * Item style generator class for declarative support.
      * <p>
@@ -156,6 +223,40 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
         }
     }
 
+    /**
+     * Queries a data provider with filter texts typed by the user, used for bulk operations that have to visit every matching item.
+     *
+     * @param <T> item type
+     * @param <C> filter type of the data provider
+     */
+    private static class FilteredItemFetcher<T, C> implements Serializable {
+
+        private static final int PAGE_SIZE = 500;
+
+        private final DataProvider<T, C> dataProvider;
+        private final SerializableFunction<String, C> filterConverter;
+
+        public FilteredItemFetcher(final DataProvider<T, C> dataProvider, final SerializableFunction<String, C> filterConverter) {
+            this.dataProvider = dataProvider;
+            this.filterConverter = filterConverter;
+        }
+
+        public Stream<T> fetch(final String filterText) {
+            final C filter = this.filterConverter.apply(filterText);
+            if (this.dataProvider.isInMemory()) {
+                return this.dataProvider.fetch(new Query<>(0, Integer.MAX_VALUE, Collections.emptyList(), null, filter));
+            }
+
+            // the size is asked first, callbacks may rely on offset and limit being within the size
+            final int size = this.dataProvider.size(new Query<>(filter));
+            // not rounded up by adding PAGE_SIZE - 1, which overflows for sizes close to Integer.MAX_VALUE
+            return IntStream.range(0, size / PAGE_SIZE + (size % PAGE_SIZE == 0 ? 0 : 1))
+                    .mapToObj(page -> page * PAGE_SIZE)
+                    .flatMap(offset -> this.dataProvider
+                             .fetch(new Query<>(offset, Math.min(PAGE_SIZE, size - offset), Collections.emptyList(), null, filter)));
+        }
+    }
+
     private final ComboBoxMultiselectServerRpc rpc = new ComboBoxMultiselectServerRpc() {
         @Override
         public void createNewItem(final String itemValue) {
@@ -166,7 +267,14 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
         }
 
         @Override
-        public void setFilter(final String filterText) {
+        public void setFilter(final String filterText, final int requestId) {
+            // the rows always change with the filter, the client matches the response by the request id
+            getState().dataVersion++;
+            getState().filterRequestId = requestId;
+            if (Objects.equals(filterText, ComboBoxMultiselect.this.currentFilterText)) {
+                // sent again for revalidating a page the client has shown from its cache, the rows are sent anew
+                getDataCommunicator().reset();
+            }
             ComboBoxMultiselect.this.currentFilterText = filterText;
             ComboBoxMultiselect.this.filterSlot.accept(filterText);
         }
@@ -177,6 +285,30 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
                                                      sortingNeeded);
         }
 
+        @Override
+        public void updateSelectionRanges(final int[] addedRanges, final int[] removedRanges, final int dataVersion) {
+            if (dataVersion != getState(false).dataVersion) {
+                // the rows have changed, the client may have selected other items than it has shown
+                resyncSelection();
+                return;
+            }
+
+            ComboBoxMultiselect.this.updateSelection(getItemsForSelectionChange(addedRanges), getItemsForSelectionChange(removedRanges), true, false);
+        }
+
+        private Set<T> getItemsForSelectionChange(final int[] ranges) {
+            final Set<T> items = new LinkedHashSet<>();
+            for (int i = 0; i + 1 < ranges.length; i += 2) {
+                if (ranges[i] >= 0 && ranges[i + 1] > 0) {
+                    getDataCommunicator().fetchItemsWithRange(ranges[i], ranges[i + 1])
+                            .stream()
+                            .filter(item -> item != null && getItemEnabledProvider().test(item))
+                            .forEach(items::add);
+                }
+            }
+            return items;
+        }
+
         private Set<T> getItemsForSelectionChange(final Set<String> keys) {
             return keys.stream()
                     .map(key -> getItemForSelectionChange(key))
@@ -197,46 +329,66 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
 
         @Override
         public void blur() {
-            ComboBoxMultiselect.this.sortingSelection = Collections.unmodifiableCollection(getSelectedItems());
-            setFilter("");
-            getDataProvider().refreshAll();
+            // nothing is fetched again if neither the selection nor the filter has changed
+            updateSorting();
+            if (ComboBoxMultiselect.this.currentFilterText != null && !ComboBoxMultiselect.this.currentFilterText.isEmpty()) {
+                setFilter("", getState(false).filterRequestId);
+            }
         }
 
         @Override
         public void selectAll(final String filter) {
-            final ListDataProvider<T> listDataProvider = ((ListDataProvider) getDataProvider());
-            final Set<String> addedItems = listDataProvider.getItems()
-                    .stream()
-                    .filter(t -> {
-                        final String caption = getItemCaptionGenerator().apply(t);
-                        if (t == null) {
-                            return false;
-                        }
-                        return caption.toLowerCase()
-                                .contains(filter.toLowerCase());
-                    })
-                    .map(t -> itemToKey(t))
-                    .collect(Collectors.toSet());
-            updateSelection(addedItems, new HashSet<>(), true);
+            if (isFilterSelectionAvailable()) {
+                final FilterSelection<T> filterSelection = ComboBoxMultiselect.this.filterSelection != null
+                        ? ComboBoxMultiselect.this.filterSelection : new FilterSelection<>(ComboBoxMultiselect.this::getItemId);
+                // explicitly selected items matching the filter are selected by the filter selection from now on
+                final SerializablePredicate<T> matcher = getFilterSelectionMatcher(filter);
+                ComboBoxMultiselect.this.updateSelection(store -> store.withoutIf(matcher), filterSelection.withStep(filter, matcher, true), null, null,
+                        true);
+                return;
+            }
+
+            // every matching item is selected explicitly and held in memory, see setFilterSelectionEnabled
+            final Set<T> selectedItems = getSelectedItems();
+            final Set<T> addedItems = fetchFilteredItems(filter).filter(item -> item != null && getItemEnabledProvider().test(item))
+                    .filter(item -> !selectedItems.contains(item))
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            ComboBoxMultiselect.this.updateSelection(addedItems, new HashSet<>(), true);
         }
 
         @Override
         public void clear(final String filter) {
-            final ListDataProvider<T> listDataProvider = ((ListDataProvider) getDataProvider());
-            final Set<String> removedItems = listDataProvider.getItems()
-                    .stream()
-                    .filter(t -> {
-                        final String caption = getItemCaptionGenerator().apply(t);
-                        if (t == null) {
-                            return false;
-                        }
-                        return caption.toLowerCase()
-                                .contains(filter.toLowerCase());
-                    })
-                    .map(t -> itemToKey(t))
-                    .collect(Collectors.toSet());
-            updateSelection(new HashSet<>(), removedItems, true);
-        };
+            if (isFilterSelectionAvailable()) {
+                final SerializablePredicate<T> matcher = getFilterSelectionMatcher(filter);
+                final FilterSelection<T> filterSelection = ComboBoxMultiselect.this.filterSelection == null ? null
+                        : ComboBoxMultiselect.this.filterSelection.withStep(filter, matcher, false);
+                ComboBoxMultiselect.this.updateSelection(store -> store.withoutIf(matcher), filterSelection == null || filterSelection.isEmpty() ? null
+                        : filterSelection, null, null, true);
+                return;
+            }
+
+            final Set<T> selectedItems = getSelectedItems();
+            final Set<T> removedItems = fetchFilteredItems(filter).filter(item -> item != null && getItemEnabledProvider().test(item))
+                    .filter(selectedItems::contains)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            ComboBoxMultiselect.this.updateSelection(new HashSet<>(), removedItems, true);
+        }
+
+        @Override
+        public void popupOpened() {
+            updateSorting();
+        }
+
+        @Override
+        public void requestFirstSelectedIndex() {
+            getRpcProxy(ComboBoxMultiselectClientRpc.class).setFirstSelectedIndex(indexOfFirstSelectedItem());
+        }
+
+        @Override
+        public void resyncSelection() {
+            ComboBoxMultiselect.this.selectionResyncNeeded = true;
+            markAsDirty();
+        }
     };
 
     /**
@@ -252,25 +404,128 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
         // Just ignore when neither setDataProvider nor setItems has been called
     };
 
-    private final InputTextFieldCaptionGenerator<T> inputTextFieldCaptionGenerator = items -> {
-        if (items.isEmpty()) {
-            return "";
-        }
+    private FilteredItemFetcher<T, ?> filteredItemFetcher;
 
-        final List<String> captions = new ArrayList<>();
+    /**
+     * Converts a filter text to a predicate for single items, only known for in-memory data providers.
+     */
+    private SerializableFunction<String, SerializablePredicate<T>> itemFilterConverter;
 
-        if (getState().selectedItemKeys != null) {
-            for (final T item : items) {
-                if (item != null) {
-                    captions.add(getItemCaptionGenerator().apply(item));
-                }
-            }
-        }
+    private boolean filterSelectionEnabled;
 
-        return "(" + captions.size() + ") " + StringUtils.join(captions, "; ");
-    };
+    private boolean captionIndexEnabled;
+
+    private boolean substringIndexEnabled;
+
+    private boolean wordPrefixFilteringEnabled;
+
+    /**
+     * Whether the items are filtered by the default case insensitive substring match of the caption.
+     */
+    private boolean defaultCaptionFiltering;
+
+    private int clientSideFilteringThreshold = DEFAULT_CLIENT_SIDE_FILTERING_THRESHOLD;
+
+    private IndexOfCallback<T> indexOfCallback;
+
+    /**
+     * The data provider the caption index is built for, only set for in-memory data providers.
+     */
+    private ListDataProvider<T> captionIndexDataProvider;
+
+    private CaptionIndex<T> captionIndex;
+
+    private Registration dataProviderRegistration;
+
+    /**
+     * Changed whenever the items or their captions change, so the items matched by the filter selection are counted again.
+     */
+    private int matchesVersion;
+
+    private Registration catalogRegistration;
+
+    /**
+     * Whether a reloaded catalog has to be shown when this component is shown again.
+     */
+    private boolean catalogOutdated;
+
+    private int captionCacheSize;
+
+    private boolean captionCacheWeakKeys;
+
+    private CaptionCache<T> captionCache;
+
+    /**
+     * Matches of the last filters, narrowed down when the user extends the filter text.
+     */
+    private final CaptionIndex.RecentResults recentFilterResults = new CaptionIndex.RecentResults();
+
+    /**
+     * Symbolic part of the selection created by select all, {@code null} if not used.
+     */
+    private FilterSelection<T> filterSelection;
+
+    private SelectionCaptionGenerator selectionCaptionGenerator = DEFAULT_SELECTION_CAPTION_GENERATOR;
+
+    private int selectionCaptionLength = DEFAULT_SELECTION_CAPTION_LENGTH;
+
+    /**
+     * The first explicitly selected items shown in the text field and their captions, updated from the changes of the selection.
+     */
+    private final List<T> captionItems = new ArrayList<>();
+    private final List<String> captionItemCaptions = new ArrayList<>();
+
+    /**
+     * Sum of the lengths of the captions of the items shown in the text field, without separators.
+     */
+    private int captionItemCharacters;
+
+    private Collection<T> sortingSelection = Collections.emptySet();
+
+    /**
+     * Whether the selection has changed since the items were last sorted by it.
+     */
+    private boolean sortingSelectionOutdated;
+
+    /**
+     * The sort comparator of an in-memory data provider, {@code null} for other data providers.
+     */
+    private SelectedFirstComparator<T> selectedFirstComparator;
+
+    /**
+     * Explicitly selected items, replaced on every selection change. The replaced stores share most of their nodes and stay valid as old values.
+     */
+    private SelectionStore<T> selectionStore = SelectionStore.empty(this::getItemId);
 
-    private Collection<T> sortingSelection = Collections.unmodifiableCollection(new ArrayList<>());
+    /**
+     * Explicitly selected items the items were last sorted by.
+     */
+    private SelectionStore<T> sortingStore = this.selectionStore;
+
+    /**
+     * Keys of the explicitly selected items, replaced on every selection change.
+     */
+    private SelectionStore<String> selectedItemKeys = SelectionStore.empty(key -> key);
+
+    /**
+     * Key of every explicitly selected item by its id, the key mapper assigns a new key to an item that has left the active range.
+     */
+    private final Map<Object, String> selectedItemKeysById = new HashMap<>();
+
+    /**
+     * Keys of the selected items last sent to the client.
+     */
+    private SelectionStore<String> clientSelectedItemKeys = this.selectedItemKeys;
+
+    /**
+     * Version of the selection last sent to the client.
+     */
+    private int selectionVersion;
+
+    /**
+     * Whether the client has missed a selection update and needs all selected keys.
+     */
+    private boolean selectionResyncNeeded;
 
     /**
      * Constructs an empty combo box without a caption. The content of the combo box can be set with {@link #setDataProvider(DataProvider)} or
@@ -312,7 +567,7 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
         registerRpc(new FocusAndBlurServerRpcDecorator(this, this::fireEvent));
 
         addDataGenerator((final T data, final JsonObject jsonObject) -> {
-            String caption = getItemCaptionGenerator().apply(data);
+            String caption = getCachedItemCaptionGenerator().apply(data);
             if (caption == null) {
                 caption = "";
             }
@@ -327,6 +582,37 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
                         .getURL();
                 jsonObject.put(ComboBoxMultiselectConstants.ICON, iconUrl);
             }
+            // the client checks the explicitly selected items by their keys, only items selected by a filter and selected items with a key the
+            // client does not know yet are marked
+            final boolean markSelected;
+            if (this.selectionStore.contains(data)) {
+                final String key = jsonObject.getString(DataCommunicatorConstants.KEY);
+                updateSelectedItemKey(data, key);
+                markSelected = !this.clientSelectedItemKeys.contains(key);
+            }
+            else {
+                markSelected = this.filterSelection != null && this.filterSelection.contains(data);
+            }
+            if (!markSelected) {
+                jsonObject.remove(ListingJsonConstants.JSONKEY_ITEM_SELECTED);
+            }
+        });
+        addDataGenerator(new DataGenerator<T>() {
+
+            @Override
+            public void generateData(final T item, final JsonObject jsonObject) {
+                // the other generator adds the caption and the key
+            }
+
+            @Override
+            public void refreshData(final T item) {
+                ComboBoxMultiselect.this.selectionStore = ComboBoxMultiselect.this.selectionStore.withReplaced(item);
+                if (ComboBoxMultiselect.this.selectionStore.contains(item) && ComboBoxMultiselect.this.captionItems.stream()
+                        .anyMatch(captionItem -> getItemId(captionItem).equals(getItemId(item)))) {
+                    fillCaptionItems();
+                    updateSelectedItemsCaption();
+                }
+            }
         });
     }
 
@@ -337,7 +623,7 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
      */
     @Override
     public void setItems(final Collection<T> items) {
-        final ListDataProvider<T> listDataProvider = DataProvider.ofCollection(items);
+        final ListDataProvider<T> listDataProvider = new IndexedListDataProvider<>(items);
 
         setDataProvider(listDataProvider);
 
@@ -381,10 +667,49 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
     public void setDataProvider(final ListDataProvider<T> listDataProvider) {
         // Cannot use the case insensitive contains shorthand from
         // ListDataProvider since it wouldn't react to locale changes
-        final CaptionFilter defaultCaptionFilter = (itemText, filterText) -> itemText.toLowerCase(getLocale())
-                .contains(filterText.toLowerCase(getLocale()));
+        final CaptionFilter defaultCaptionFilter = (itemText, filterText) -> itemText.toLowerCase(getFilterLocale())
+                .contains(filterText.toLowerCase(getFilterLocale()));
+
+        setListDataProvider(listDataProvider, filterText -> {
+            if (isCaptionIndexUsed()) {
+                final CaptionIndex.MatchMode mode = this.wordPrefixFilteringEnabled ? CaptionIndex.MatchMode.WORD_PREFIX
+                        : this.substringIndexEnabled || listDataProvider instanceof SharedCatalog.View ? CaptionIndex.MatchMode.INDEXED_SUBSTRING
+                                : CaptionIndex.MatchMode.SUBSTRING;
+                return new CaptionIndex.Filter<>(this::getCaptionIndex, filterText, mode, this.recentFilterResults);
+            }
+            return item -> defaultCaptionFilter.test(getCachedItemCaptionGenerator().apply(item), filterText);
+        });
+        this.defaultCaptionFiltering = true;
+    }
+
+    /**
+     * Sets the items of a catalog shared with other components as the data of this combo box. Filtering and sorting are answered from the indexes of
+     * the catalog, the items are not copied. Filtering uses a case insensitive match, or matches word prefixes if
+     * {@link #setWordPrefixFilteringEnabled(boolean)} is set.
+     * <p>
+     * The item caption generator of the catalog is set as the item caption generator of this combo box.
+     *
+     * @param catalog the shared catalog, not {@code null}
+     */
+    public void setCatalog(final SharedCatalog<T> catalog) {
+        Objects.requireNonNull(catalog, "Catalog cannot be null");
 
-        setDataProvider(defaultCaptionFilter, listDataProvider);
+        setItemCaptionGenerator(catalog.getItemCaptionGenerator());
+        setDataProvider(catalog.createView());
+
+        setPageLength(Math.min(catalog.getItems()
+                .size(), ComboBoxMultiselect.DEFAULT_PAGE_LENGTH));
+    }
+
+    /**
+     * Returns the shared catalog set with {@link #setCatalog(SharedCatalog)}.
+     *
+     * @return the catalog, or {@code null} if the data is not from a shared catalog
+     */
+    @SuppressWarnings("unchecked")
+    public SharedCatalog<T> getCatalog() {
+        return this.captionIndexDataProvider instanceof SharedCatalog.View ? ((SharedCatalog.View<T>) this.captionIndexDataProvider).getCatalog()
+                : null;
     }
 
     /**
@@ -411,11 +736,22 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
      * @since 8.0
      */
     public void setDataProvider(final CaptionFilter captionFilter, final ListDataProvider<T> listDataProvider) {
-        Objects.requireNonNull(listDataProvider, "List data provider cannot be null");
-
         // Must do getItemCaptionGenerator() for each operation since it might
         // not be the same as when this method was invoked
-        setDataProvider(listDataProvider, filterText -> item -> captionFilter.test(getItemCaptionGenerator().apply(item), filterText));
+        setListDataProvider(listDataProvider, filterText -> item -> captionFilter.test(getCachedItemCaptionGenerator().apply(item), filterText));
+    }
+
+    private void setListDataProvider(final ListDataProvider<T> listDataProvider,
+            final SerializableFunction<String, SerializablePredicate<T>> filterConverter) {
+        Objects.requireNonNull(listDataProvider, "List data provider cannot be null");
+
+        setDataProvider(listDataProvider, filterConverter);
+
+        this.itemFilterConverter = filterText -> {
+            final SerializablePredicate<T> providerFilter = listDataProvider.getFilter();
+            final SerializablePredicate<T> captionPredicate = filterConverter.apply(filterText);
+            return item -> (providerFilter == null || providerFilter.test(item)) && captionPredicate.test(item);
+        };
     }
 
     /**
@@ -505,7 +841,55 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
     }
 
     /**
-     * Sets the page length for the suggestion popup. Setting the page length to 0 will disable suggestion popup paging (all items visible).
+     * Sets a callback for finding the index of the first selected item when {@link #setScrollToSelectedItem(boolean)} is set. Without a callback the
+     * items are fetched page by page on the server until a selected item is found.
+     *
+     * @param indexOfCallback the callback, or {@code null} to search the fetched items
+     */
+    public void setIndexOfCallback(final IndexOfCallback<T> indexOfCallback) {
+        this.indexOfCallback = indexOfCallback;
+    }
+
+    /**
+     * Returns the callback for finding the index of the first selected item.
+     *
+     * @see #setIndexOfCallback(IndexOfCallback)
+     *
+     * @return the callback, or {@code null} if not set
+     */
+    public IndexOfCallback<T> getIndexOfCallback() {
+        return this.indexOfCallback;
+    }
+
+    /**
+     * Returns the index of the first selected item under the current filter and sort order.
+     *
+     * @return the index, or {@code -1} if no selected item matches the filter
+     */
+    protected int indexOfFirstSelectedItem() {
+        final Set<T> selectedItems = getSelectedItems();
+        if (selectedItems.isEmpty()) {
+            return -1;
+        }
+        if (this.indexOfCallback != null) {
+            return this.indexOfCallback.indexOfFirst(this.currentFilterText == null ? "" : this.currentFilterText, selectedItems);
+        }
+
+        final int size = getDataCommunicator().getDataProviderSize();
+        for (int offset = 0; offset < size; offset += INDEX_OF_PAGE_SIZE) {
+            final List<T> items = getDataCommunicator().fetchItemsWithRange(offset, Math.min(INDEX_OF_PAGE_SIZE, size - offset));
+            for (int i = 0; i < items.size(); i++) {
+                if (isSelected(items.get(i))) {
+                    return offset + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the page length for the suggestion popup. Setting the page length to 0 will disable suggestion popup paging, all items can then be scrolled
+     * while only the rows around the visible ones are fetched and rendered.
      *
      * @param pageLength the pageLength to set
      */
@@ -513,6 +897,51 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
         getState().pageLength = pageLength;
     }
 
+    /**
+     * Sets the number of pages the client fetches before and after the shown page, so that paging through the suggestions does not wait for the
+     * server.
+     *
+     * @param prefetchPages the number of pages on each side, {@code 0} to fetch only the shown page, default is 3
+     */
+    public void setPrefetchPages(final int prefetchPages) {
+        if (prefetchPages < 0) {
+            throw new IllegalArgumentException("Prefetch pages cannot be negative");
+        }
+        getState().prefetchPages = prefetchPages;
+    }
+
+    /**
+     * Returns the number of pages the client fetches before and after the shown page.
+     *
+     * @see #setPrefetchPages(int)
+     *
+     * @return the number of pages on each side
+     */
+    public int getPrefetchPages() {
+        return getState(false).prefetchPages;
+    }
+
+    /**
+     * Sets how long the client waits after the last key stroke before sending the filter to the server. On fast connections the client waits at most
+     * the measured round trip time. Filters typed while a request is in progress are combined, only the latest one is sent.
+     *
+     * @param filterDebounceDelay the maximum delay in milliseconds, {@code 0} to send the filter immediately
+     */
+    public void setFilterDebounceDelay(final int filterDebounceDelay) {
+        getState().filterDebounceDelay = filterDebounceDelay;
+    }
+
+    /**
+     * Returns how long the client waits after the last key stroke before sending the filter to the server.
+     *
+     * @see #setFilterDebounceDelay(int)
+     *
+     * @return the maximum delay in milliseconds
+     */
+    public int getFilterDebounceDelay() {
+        return getState(false).filterDebounceDelay;
+    }
+
     /**
      * Sets the suggestion pop-up's width as a CSS string. By using relative units (e.g. "50%") it's possible to set the popup's width relative to the
      * ComboBoxMultiselect itself.
@@ -531,7 +960,10 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
     /**
      * Sets whether to scroll the selected item visible (directly open the page on which it is) when opening the combo box popup or not.
      * <p>
-     * This requires finding the index of the item, which can be expensive in many large lazy loading containers.
+     * This requires finding the index of the item on the server, which can be expensive in many large lazy loading containers unless an
+     * {@link IndexOfCallback} is set.
+     *
+     * @see #setIndexOfCallback(IndexOfCallback)
      *
      * @param scrollToSelectedItem true to find the page with the selected item when opening the selection popup
      */
@@ -551,47 +983,543 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
     }
 
     /**
-     * Sets the style generator that is used to produce custom class names for items visible in the popup. The CSS class name that will be added to the item is
-     * <tt>v-filterselect-item-[style name]</tt>. Returning null from the generator results in no custom style name being set.
-     *
-     * @see StyleGenerator
+     * Sets whether "select all" should store the selection as the filter typed by the user instead of selecting every matching item one by one. The
+     * selected items are then only looked up when needed, e.g. {@link #getSelectedItems()} returns a view that streams them from the data provider.
+     * <p>
+     * This only has an effect for in-memory data providers set with {@link #setItems(Collection)} or {@link #setDataProvider(ListDataProvider)} and
+     * their variants. For other data providers all matching items are selected one by one: they are fetched page by page, but the selection and the
+     * selection event hold every matching item, so "select all" needs memory for all items matching the filter.
      *
-     * @param itemStyleGenerator the item style generator to set, not null
-     * @throws NullPointerException if {@code itemStyleGenerator} is {@code null}
-     * @since 8.0
+     * @param filterSelectionEnabled {@code true} to select all matching items symbolically
      */
-    public void setStyleGenerator(final StyleGenerator<T> itemStyleGenerator) {
-        Objects.requireNonNull(itemStyleGenerator, "Item style generator must not be null");
-        this.itemStyleGenerator = itemStyleGenerator;
-        getDataCommunicator().reset();
+    public void setFilterSelectionEnabled(final boolean filterSelectionEnabled) {
+        this.filterSelectionEnabled = filterSelectionEnabled;
     }
 
     /**
-     * Gets the currently used style generator that is used to generate CSS class names for items. The default item style provider returns null for all items,
-     * resulting in no custom item class names being set.
+     * Returns whether "select all" stores the selection as the typed filter.
      *
-     * @see StyleGenerator
-     * @see #setStyleGenerator(StyleGenerator)
+     * @see #setFilterSelectionEnabled(boolean)
      *
-     * @return the currently used item style generator, not null
-     * @since 8.0
+     * @return {@code true} if matching items are selected symbolically
      */
-    public StyleGenerator<T> getStyleGenerator() {
-        return this.itemStyleGenerator;
+    public boolean isFilterSelectionEnabled() {
+        return this.filterSelectionEnabled;
     }
 
-    @Override
-    public void setItemIconGenerator(final IconGenerator<T> itemIconGenerator) {
-        super.setItemIconGenerator(itemIconGenerator);
+    /**
+     * Sets whether the captions of the items should be indexed for filtering. The captions are then generated and converted to lower case once instead
+     * of for every item on every filter change. When the user extends the filter text, only the matches of one of the last two filters are checked
+     * again. The index is rebuilt when the data provider is refreshed or the locale or the item caption generator is changed.
+     * <p>
+     * This only has an effect for the case insensitive filtering of {@link #setItems(Collection)} and {@link #setDataProvider(ListDataProvider)}.
+     *
+     * @param captionIndexEnabled {@code true} to index the item captions
+     */
+    public void setCaptionIndexEnabled(final boolean captionIndexEnabled) {
+        this.captionIndexEnabled = captionIndexEnabled;
     }
 
     /**
-     * Sets the handler that is called when user types a new item. The creation of new items is allowed when a new item handler has been set.
+     * Returns whether the captions of the items are indexed for filtering.
      *
-     * @param newItemHandler handler called for new items, null to only permit the selection of existing items
-     * @since 8.0
+     * @see #setCaptionIndexEnabled(boolean)
+     *
+     * @return {@code true} if the item captions are indexed
      */
-    public void setNewItemHandler(final NewItemHandler newItemHandler) {
+    public boolean isCaptionIndexEnabled() {
+        return this.captionIndexEnabled;
+    }
+
+    /**
+     * Sets whether the filter results should be looked up in a substring index of the item captions. The index keeps the positions of the items
+     * containing each sequence of three characters, so a filter only has to check the items containing its rarest sequence instead of all items. When
+     * the items have been set with {@link #setItems(Collection)}, the data provider pages through the matching items directly.
+     * <p>
+     * The index needs considerably more memory than the caption index of {@link #setCaptionIndexEnabled(boolean)}, which it includes. It only has an
+     * effect for the case insensitive filtering of {@link #setItems(Collection)} and {@link #setDataProvider(ListDataProvider)}.
+     *
+     * @param substringIndexEnabled {@code true} to index the item captions for substring search
+     */
+    public void setSubstringIndexEnabled(final boolean substringIndexEnabled) {
+        this.substringIndexEnabled = substringIndexEnabled;
+    }
+
+    /**
+     * Returns whether the filter results are looked up in a substring index of the item captions.
+     *
+     * @see #setSubstringIndexEnabled(boolean)
+     *
+     * @return {@code true} if the item captions are indexed for substring search
+     */
+    public boolean isSubstringIndexEnabled() {
+        return this.substringIndexEnabled;
+    }
+
+    /**
+     * Sets whether the filter text should be split into words that each have to be the start of a word of the caption, in any order. E.g. "blue sh"
+     * shows "Shirt, blue" but not "Blueshirt". The words of the captions are indexed, so a filter costs about as much as looking up its rarest word.
+     * <p>
+     * This only has an effect for {@link #setItems(Collection)} and {@link #setDataProvider(ListDataProvider)} and replaces the default substring
+     * matching there.
+     *
+     * @param wordPrefixFilteringEnabled {@code true} to match the words of the filter text against the starts of words
+     */
+    public void setWordPrefixFilteringEnabled(final boolean wordPrefixFilteringEnabled) {
+        this.wordPrefixFilteringEnabled = wordPrefixFilteringEnabled;
+    }
+
+    /**
+     * Returns whether the words of the filter text are matched against the starts of words of the captions.
+     *
+     * @see #setWordPrefixFilteringEnabled(boolean)
+     *
+     * @return {@code true} if word prefix filtering is used
+     */
+    public boolean isWordPrefixFilteringEnabled() {
+        return this.wordPrefixFilteringEnabled;
+    }
+
+    /**
+     * Sets the maximum number of items for filtering in the browser. If the items of {@link #setItems(Collection)} or
+     * {@link #setDataProvider(ListDataProvider)} do not exceed it, all items are sent to the browser once, which then filters and pages them without
+     * asking the server. Only selection changes are sent to the server.
+     * <p>
+     * Custom caption filters and word prefix filtering are always answered by the server.
+     * <p>
+     * The browser converts the captions to lower case without a locale. While the items are filtered in the browser, the server does the same for
+     * selecting all items of a filter, otherwise it uses the locale of this component, e.g. for the dotted and dotless i of Turkish.
+     *
+     * @param clientSideFilteringThreshold the maximum number of items, {@code 0} to always filter on the server, default is
+     *            {@value #DEFAULT_CLIENT_SIDE_FILTERING_THRESHOLD}
+     */
+    public void setClientSideFilteringThreshold(final int clientSideFilteringThreshold) {
+        this.clientSideFilteringThreshold = clientSideFilteringThreshold;
+        markAsDirty();
+    }
+
+    /**
+     * Returns the maximum number of items for filtering in the browser.
+     *
+     * @see #setClientSideFilteringThreshold(int)
+     *
+     * @return the maximum number of items, {@code 0} if the server always filters
+     */
+    public int getClientSideFilteringThreshold() {
+        return this.clientSideFilteringThreshold;
+    }
+
+    /**
+     * Sets the generator of the text shown in the text field for the selected items.
+     *
+     * @param selectionCaptionGenerator the generator, not {@code null}
+     */
+    public void setSelectionCaptionGenerator(final SelectionCaptionGenerator selectionCaptionGenerator) {
+        Objects.requireNonNull(selectionCaptionGenerator, "Selection caption generator cannot be null");
+        this.selectionCaptionGenerator = selectionCaptionGenerator;
+        updateSelectedItemsCaption();
+    }
+
+    /**
+     * Returns the generator of the text shown in the text field for the selected items.
+     *
+     * @return the generator
+     */
+    public SelectionCaptionGenerator getSelectionCaptionGenerator() {
+        return this.selectionCaptionGenerator;
+    }
+
+    /**
+     * Sets the maximum length of the captions of the selected items shown in the text field, including a separator of two characters between the
+     * captions. The caption of the first selected item is always shown.
+     *
+     * @param selectionCaptionLength the maximum length, default is {@value #DEFAULT_SELECTION_CAPTION_LENGTH}
+     */
+    public void setSelectionCaptionLength(final int selectionCaptionLength) {
+        this.selectionCaptionLength = selectionCaptionLength;
+        fillCaptionItems();
+        updateSelectedItemsCaption();
+    }
+
+    /**
+     * Returns the maximum length of the captions of the selected items shown in the text field.
+     *
+     * @return the maximum length
+     */
+    public int getSelectionCaptionLength() {
+        return this.selectionCaptionLength;
+    }
+
+    /**
+     * Switches between filtering in the browser and on the server, depending on the filtering mode and the number of items.
+     */
+    private void updateClientSideFiltering() {
+        final boolean clientSideFiltering = isClientSideFilteringUsed();
+        if (clientSideFiltering == getState(false).clientSideFiltering) {
+            return;
+        }
+
+        getState().clientSideFiltering = clientSideFiltering;
+        if (clientSideFiltering && this.currentFilterText != null && !this.currentFilterText.isEmpty()) {
+            // the browser gets all items
+            this.currentFilterText = "";
+            this.filterSlot.accept("");
+            getState().dataVersion++;
+        }
+    }
+
+    private boolean isClientSideFilteringUsed() {
+        return this.defaultCaptionFiltering && !this.wordPrefixFilteringEnabled && this.captionIndexDataProvider != null
+                && this.captionIndexDataProvider.getItems()
+                        .size() <= this.clientSideFilteringThreshold
+                // the browser converts the captions without a locale, a catalog may have been built with another one
+                && (!(this.captionIndexDataProvider instanceof SharedCatalog.View) || Locale.ROOT.equals(((SharedCatalog.View<T>) this.captionIndexDataProvider).getIndex()
+                        .getLocale()));
+    }
+
+    /**
+     * Returns the locale the captions and filter texts are converted to lower case with. This is the locale of the component, unless the items are
+     * filtered in the browser. The browser converts without a locale, so the server then uses {@link Locale#ROOT} to select the same items by a
+     * filter as the browser shows.
+     *
+     * @return the locale, not {@code null}
+     */
+    private Locale getFilterLocale() {
+        final Locale locale = getLocale();
+        return locale == null || isClientSideFilteringUsed() ? Locale.ROOT : locale;
+    }
+
+    private boolean isCaptionIndexUsed() {
+        return this.captionIndexEnabled || this.substringIndexEnabled || this.wordPrefixFilteringEnabled
+                || this.captionIndexDataProvider instanceof SharedCatalog.View;
+    }
+
+    /**
+     * Returns the caption index to sort the items with, only built if indexed filtering is enabled.
+     */
+    private CaptionIndex<T> getSortingIndex() {
+        return isCaptionIndexUsed() ? getCaptionIndex() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CaptionIndex<T> getCaptionIndex() {
+        if (this.captionIndexDataProvider instanceof SharedCatalog.View) {
+            // the snapshot the view was created with, even if the catalog has been reloaded meanwhile
+            return ((SharedCatalog.View<T>) this.captionIndexDataProvider).getIndex();
+        }
+        if (this.captionIndex == null || !this.captionIndex.getLocale()
+                .equals(getFilterLocale())) {
+            // the index keeps the captions itself, they would only flush the caption cache
+            this.captionIndex = new CaptionIndex<>(this.captionIndexDataProvider.getItems(), getItemCaptionGenerator(), getFilterLocale());
+        }
+        return this.captionIndex;
+    }
+
+    /**
+     * Drops the caption index and cached captions and listens to changes of the data provider while attached.
+     */
+    private void updateDataProviderListener() {
+        this.captionIndex = null;
+        if (this.captionCache != null) {
+            this.captionCache.invalidateAll();
+        }
+        if (this.dataProviderRegistration != null) {
+            this.dataProviderRegistration.remove();
+            this.dataProviderRegistration = null;
+        }
+        if (getDataProvider() != null && isAttached()) {
+            this.dataProviderRegistration = getDataProvider().addDataProviderListener(this::onDataChange);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onDataChange(final DataChangeEvent<?> event) {
+        itemsChanged();
+        this.captionIndex = null;
+        if (this.filterSelection != null && !(event instanceof DataRefreshEvent)) {
+            // removed items do not have to be excluded anymore
+            this.filterSelection = this.filterSelection.withoutStaleExclusions(this::fetchFilteredItems);
+        }
+        if (this.captionCache != null) {
+            if (event instanceof DataRefreshEvent) {
+                this.captionCache.invalidate(((DataRefreshEvent<T>) event).getItem());
+            }
+            else {
+                this.captionCache.invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * Tells the client that the items or their captions have changed, so rows and pages received before are outdated and the filter selection is
+     * counted again.
+     */
+    private void itemsChanged() {
+        this.matchesVersion++;
+        rowsChanged();
+    }
+
+    /**
+     * Tells the client that the order or the content of the rows has changed, so rows and pages received before are outdated.
+     */
+    private void rowsChanged() {
+        getState().itemsVersion++;
+        getState().dataVersion++;
+    }
+
+    /**
+     * Sets the maximum number of item captions to cache. The item caption generator is then called at most once per item until the item is
+     * refreshed with {@link DataProvider#refreshItem(Object)} or {@link DataProvider#refreshAll()}, the locale changes or another item caption
+     * generator is set. The least recently used captions are dropped when more captions are needed.
+     *
+     * @param captionCacheSize the maximum number of cached captions, {@code 0} to disable the cache (the default)
+     */
+    public void setCaptionCacheSize(final int captionCacheSize) {
+        this.captionCacheSize = captionCacheSize;
+        this.captionCache = null;
+    }
+
+    /**
+     * Returns the maximum number of cached item captions.
+     *
+     * @see #setCaptionCacheSize(int)
+     *
+     * @return the maximum number of cached captions, {@code 0} if the cache is disabled
+     */
+    public int getCaptionCacheSize() {
+        return this.captionCacheSize;
+    }
+
+    /**
+     * Sets whether the caption cache should hold the items weakly, so that it does not prevent them from being garbage collected. A weakly keyed
+     * cache is cleared completely when it is full instead of dropping the least recently used captions.
+     *
+     * @param captionCacheWeakKeys {@code true} to hold the items of the caption cache weakly
+     */
+    public void setCaptionCacheWeakKeys(final boolean captionCacheWeakKeys) {
+        this.captionCacheWeakKeys = captionCacheWeakKeys;
+        this.captionCache = null;
+    }
+
+    /**
+     * Returns whether the caption cache holds the items weakly.
+     *
+     * @see #setCaptionCacheWeakKeys(boolean)
+     *
+     * @return {@code true} if the items of the caption cache are held weakly
+     */
+    public boolean isCaptionCacheWeakKeys() {
+        return this.captionCacheWeakKeys;
+    }
+
+    /**
+     * Returns the caption cache with its hit and miss statistics.
+     *
+     * @see #setCaptionCacheSize(int)
+     *
+     * @return the caption cache, or {@code null} if not enabled
+     */
+    public CaptionCache<T> getCaptionCache() {
+        if (this.captionCacheSize <= 0) {
+            return null;
+        }
+        final ItemCaptionGenerator<T> itemCaptionGenerator = getItemCaptionGenerator();
+        if (this.captionCache == null || !this.captionCache.isCacheOf(itemCaptionGenerator)) {
+            this.captionCache = new CaptionCache<>(itemCaptionGenerator, this.captionCacheSize, this.captionCacheWeakKeys);
+        }
+        return this.captionCache;
+    }
+
+    /**
+     * Returns the caption generator used to generate the captions, i.e. the caption cache if it is enabled and the item caption generator otherwise.
+     *
+     * @see #setCaptionCacheSize(int)
+     */
+    private ItemCaptionGenerator<T> getCachedItemCaptionGenerator() {
+        final CaptionCache<T> cache = getCaptionCache();
+        return cache != null ? cache : getItemCaptionGenerator();
+    }
+
+    @Override
+    public void attach() {
+        super.attach();
+        // the inherited locale might have changed
+        updateDataProviderListener();
+        updateCatalogListener();
+    }
+
+    @Override
+    public void detach() {
+        if (this.dataProviderRegistration != null) {
+            this.dataProviderRegistration.remove();
+            this.dataProviderRegistration = null;
+        }
+        if (this.catalogRegistration != null) {
+            this.catalogRegistration.remove();
+            this.catalogRegistration = null;
+        }
+        super.detach();
+    }
+
+    @Override
+    public void beforeClientResponse(final boolean initial) {
+        // a hidden component is shown again
+        if (this.catalogOutdated) {
+            refreshCatalog();
+        }
+        updateClientSideFiltering();
+        super.beforeClientResponse(initial);
+
+        sendSelectedItemKeys(initial);
+    }
+
+    /**
+     * Sends the changes of the selected keys since the last response, or all selected keys to a new or out of sync client.
+     *
+     * @param initial {@code true} if the client has no selection yet
+     */
+    private void sendSelectedItemKeys(final boolean initial) {
+        final ComboBoxMultiselectClientRpc clientRpc = getRpcProxy(ComboBoxMultiselectClientRpc.class);
+        if (initial || this.selectionResyncNeeded) {
+            clientRpc.setSelection(this.selectedItemKeys.asSet(), ++this.selectionVersion);
+        } else if (this.selectedItemKeys != this.clientSelectedItemKeys) {
+            final Set<String> addedItemKeys = new LinkedHashSet<>();
+            final Set<String> removedItemKeys = new LinkedHashSet<>();
+            this.selectedItemKeys.diff(this.clientSelectedItemKeys, addedItemKeys::add, removedItemKeys::add);
+            if (!addedItemKeys.isEmpty() || !removedItemKeys.isEmpty()) {
+                clientRpc.updateSelection(addedItemKeys, removedItemKeys, ++this.selectionVersion);
+            }
+        }
+        this.clientSelectedItemKeys = this.selectedItemKeys;
+        this.selectionResyncNeeded = false;
+    }
+
+    /**
+     * Listens to reloads of a reloadable catalog while attached.
+     */
+    @SuppressWarnings("unchecked")
+    private void updateCatalogListener() {
+        if (this.catalogRegistration != null) {
+            this.catalogRegistration.remove();
+            this.catalogRegistration = null;
+        }
+        final SharedCatalog<T> catalog = getCatalog();
+        if (catalog instanceof ReloadableCatalog && isAttached()) {
+            final UI ui = getUI();
+            this.catalogRegistration = ((ReloadableCatalog<T>) catalog).addReloadListener(() -> {
+                try {
+                    ui.access(this::onCatalogReload);
+                }
+                catch (final UIDetachedException e) {
+                    // the UI has been closed, the listener is removed on detach
+                }
+            });
+        }
+    }
+
+    private void onCatalogReload() {
+        if (isShown()) {
+            refreshCatalog();
+        }
+        else {
+            this.catalogOutdated = true;
+        }
+    }
+
+    private boolean isShown() {
+        for (Component component = this; component != null; component = component.getParent()) {
+            if (!component.isVisible()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Switches to the current items of the catalog, keeping the selection and the filter.
+     */
+    @SuppressWarnings("unchecked")
+    private void refreshCatalog() {
+        this.catalogOutdated = false;
+        if (this.captionIndexDataProvider instanceof SharedCatalog.View && !((SharedCatalog.View<T>) this.captionIndexDataProvider).isCurrent()) {
+            setDataProvider(((SharedCatalog.View<T>) this.captionIndexDataProvider).getCatalog()
+                    .createView());
+        }
+    }
+
+    @Override
+    public void setLocale(final Locale locale) {
+        super.setLocale(locale);
+        // the captions may be generated and are matched with the locale
+        itemsChanged();
+        this.captionIndex = null;
+        if (this.captionCache != null) {
+            this.captionCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void setItemCaptionGenerator(final ItemCaptionGenerator<T> itemCaptionGenerator) {
+        super.setItemCaptionGenerator(itemCaptionGenerator);
+        itemsChanged();
+        this.captionIndex = null;
+        fillCaptionItems();
+        updateSelectedItemsCaption();
+    }
+
+    private boolean isFilterSelectionAvailable() {
+        return this.filterSelectionEnabled && this.itemFilterConverter != null;
+    }
+
+    private SerializablePredicate<T> getFilterSelectionMatcher(final String filter) {
+        final SerializablePredicate<T> matcher = this.itemFilterConverter.apply(filter == null ? "" : filter);
+        return item -> item != null && getItemEnabledProvider().test(item) && matcher.test(item);
+    }
+
+    /**
+     * Sets the style generator that is used to produce custom class names for items visible in the popup. The CSS class name that will be added to the item is
+     * <tt>v-filterselect-item-[style name]</tt>. Returning null from the generator results in no custom style name being set.
+     *
+     * @see StyleGenerator
+     *
+     * @param itemStyleGenerator the item style generator to set, not null
+     * @throws NullPointerException if {@code itemStyleGenerator} is {@code null}
+     * @since 8.0
+     */
+    public void setStyleGenerator(final StyleGenerator<T> itemStyleGenerator) {
+        Objects.requireNonNull(itemStyleGenerator, "Item style generator must not be null");
+        this.itemStyleGenerator = itemStyleGenerator;
+        rowsChanged();
+        getDataCommunicator().reset();
+    }
+
+    /**
+     * Gets the currently used style generator that is used to generate CSS class names for items. The default item style provider returns null for all items,
+     * resulting in no custom item class names being set.
+     *
+     * @see StyleGenerator
+     * @see #setStyleGenerator(StyleGenerator)
+     *
+     * @return the currently used item style generator, not null
+     * @since 8.0
+     */
+    public StyleGenerator<T> getStyleGenerator() {
+        return this.itemStyleGenerator;
+    }
+
+    @Override
+    public void setItemIconGenerator(final IconGenerator<T> itemIconGenerator) {
+        super.setItemIconGenerator(itemIconGenerator);
+        rowsChanged();
+    }
+
+    /**
+     * Sets the handler that is called when user types a new item. The creation of new items is allowed when a new item handler has been set.
+     *
+     * @param newItemHandler handler called for new items, null to only permit the selection of existing items
+     * @since 8.0
+     */
+    public void setNewItemHandler(final NewItemHandler newItemHandler) {
         this.newItemHandler = newItemHandler;
         getState().allowNewItems = newItemHandler != null;
         markAsDirty();
@@ -614,6 +1542,19 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
                                     .valueChange(new ValueChangeEvent<>(event.getComponent(), this, event.getOldValue(), event.isUserOriginated())));
     }
 
+    /**
+     * Adds a listener for the items added to and removed from the selection. Unlike a selection listener it does not compare the old and new
+     * selection, which is expensive for large selections. Selection and value change events are only created while selection or value change
+     * listeners are registered, so a component using only delta listeners does not pay for them.
+     *
+     * @param listener the listener to add, not {@code null}
+     * @return a registration handle to remove the listener
+     */
+    public Registration addSelectionDeltaListener(final SelectionDeltaListener<T> listener) {
+        Objects.requireNonNull(listener, "Listener cannot be null");
+        return addListener(SelectionDeltaEvent.class, listener, SelectionDeltaListener.SELECTION_CHANGE_METHOD);
+    }
+
     @Override
     protected ComboBoxMultiselectState getState() {
         return (ComboBoxMultiselectState) super.getState();
@@ -628,7 +1569,7 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
     protected Element writeItem(final Element design, final T item, final DesignContext context) {
         final Element element = design.appendElement("option");
 
-        final String caption = getItemCaptionGenerator().apply(item);
+        final String caption = getCachedItemCaptionGenerator().apply(item);
         if (caption != null) {
             element.html(DesignFormatter.encodeForTextNode(caption));
         }
@@ -696,32 +1637,50 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
             return filterConverter.apply(filterText);
         };
 
+        this.itemFilterConverter = null;
+        this.defaultCaptionFiltering = false;
         final SerializableConsumer<C> providerFilterSlot = internalSetDataProvider(dataProvider, convertOrNull.apply(this.currentFilterText));
 
         this.filterSlot = filter -> providerFilterSlot.accept(convertOrNull.apply(filter));
+        this.filteredItemFetcher = new FilteredItemFetcher<>(dataProvider, convertOrNull);
+    }
+
+    /**
+     * Streams all items of the current data provider that match the given filter text, using the same filter conversion as the filtering in the popup.
+     * In-memory data providers are read in one pass, other data providers are queried page by page so that only one page is held at a time.
+     *
+     * @param filter the filter text as typed by the user, may be {@code null} or empty
+     * @return a stream of the matching items, empty if no data provider has been set
+     */
+    protected Stream<T> fetchFilteredItems(final String filter) {
+        if (this.filteredItemFetcher == null) {
+            return Stream.empty();
+        }
+        return this.filteredItemFetcher.fetch(filter);
     }
 
     @Override
     protected <F> SerializableConsumer<F> internalSetDataProvider(final DataProvider<T, F> dataProvider, final F initialFilter) {
         final SerializableConsumer<F> consumer = super.internalSetDataProvider(dataProvider, initialFilter);
+        itemsChanged();
 
         if (getDataProvider() instanceof ListDataProvider) {
             final ListDataProvider<T> listDataProvider = ((ListDataProvider<T>) getDataProvider());
-            listDataProvider.setSortComparator((o1, o2) -> {
-                final boolean selected1 = this.sortingSelection.contains(o1);
-                final boolean selected2 = this.sortingSelection.contains(o2);
-
-                if (selected1 && !selected2) {
-                    return -1;
-                }
-                if (!selected1 && selected2) {
-                    return 1;
-                }
-
-                return getItemCaptionGenerator().apply(o1)
-                        .compareToIgnoreCase(getItemCaptionGenerator().apply(o2));
-            });
+            this.captionIndexDataProvider = listDataProvider;
+            this.selectedFirstComparator = new SelectedFirstComparator<>(this::getSortingIndex, () -> this.sortingSelection,
+                    this::getCachedItemCaptionGenerator);
+            listDataProvider.setSortComparator(this.selectedFirstComparator);
         }
+        else {
+            this.captionIndexDataProvider = null;
+            this.selectedFirstComparator = null;
+            if (this.filterSelection != null) {
+                // the filter selection can only be evaluated for in-memory items
+                updateSelection(store -> store, null, null, null, false);
+            }
+        }
+        updateDataProviderListener();
+        updateCatalogListener();
 
         return consumer;
     }
@@ -765,6 +1724,19 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
         public boolean test(String itemCaption, String filterText);
     }
 
+    @Override
+    public Set<T> getSelectedItems() {
+        if (this.filterSelection == null) {
+            return this.selectionStore.asSet();
+        }
+        return new FilterSelectionView<>(this.selectionStore.asSet(), this.filterSelection, this.filteredItemFetcher::fetch, this.matchesVersion);
+    }
+
+    @Override
+    public boolean isSelected(final T item) {
+        return this.selectionStore.contains(item) || this.filterSelection != null && this.filterSelection.contains(item);
+    }
+
     /**
      * Removes the given items. Any item that is not currently selected, is ignored. If none of the items are selected, does nothing.
      *
@@ -779,7 +1751,7 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
             return;
         }
 
-        updateSelection(set -> set.removeAll(items), userOriginated, true);
+        updateSelection(new HashSet<>(), new HashSet<>(items), userOriginated, true);
     }
 
     /**
@@ -790,11 +1762,11 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
      */
     @Override
     protected void deselect(final T item, final boolean userOriginated) {
-        if (!getSelectedItems().contains(item)) {
+        if (!isSelected(item)) {
             return;
         }
 
-        updateSelection(set -> set.remove(item), userOriginated, false);
+        updateSelection(new HashSet<>(), new HashSet<>(Collections.singleton(item)), userOriginated, false);
     }
 
     @Override
@@ -803,7 +1775,7 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
             return;
         }
 
-        updateSelection(Collection::clear, false, true);
+        updateSelection(SelectionStore::cleared, null, null, null, false);
     }
 
     /**
@@ -814,11 +1786,11 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
      */
     @Override
     protected void select(final T item, final boolean userOriginated) {
-        if (getSelectedItems().contains(item)) {
+        if (isSelected(item)) {
             return;
         }
 
-        updateSelection(set -> set.add(item), userOriginated, true);
+        updateSelection(new HashSet<>(Collections.singleton(item)), new HashSet<>(), userOriginated, true);
     }
 
     @Override
@@ -832,7 +1804,7 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
      * @param addedItems the items added to selection, not {@code} null
      * @param removedItems the items removed from selection, not {@code} null
      * @param userOriginated {@code true} if this was used originated, {@code false} if not
-     * @param sortingNeeded is sorting needed before sending data back to client
+     * @param sortingNeeded not used anymore, the items are sorted by the selection again when the popup is opened or the field loses focus
      */
     protected void updateSelection(final Set<T> addedItems, final Set<T> removedItems, final boolean userOriginated, final boolean sortingNeeded) {
         Objects.requireNonNull(addedItems);
@@ -842,75 +1814,333 @@ implements FieldEvents.BlurNotifier, FieldEvents.FocusNotifier, HasFilterableDat
         // discard that and leave things as was before
         addedItems.removeIf(item -> removedItems.remove(item));
 
-        if (getSelectedItems().containsAll(addedItems) && Collections.disjoint(getSelectedItems(), removedItems)) {
+        if (addedItems.stream()
+                .allMatch(this::isSelected)
+                && removedItems.stream()
+                .noneMatch(this::isSelected)) {
             return;
         }
 
-        updateSelection(set -> {
+        // items of a filter selection are deselected by excluding them
+        FilterSelection<T> newFilterSelection = this.filterSelection;
+        final Set<T> filterChangedItems = new HashSet<>();
+        if (newFilterSelection != null) {
+            for (final T item : removedItems) {
+                if (newFilterSelection.contains(item)) {
+                    newFilterSelection = newFilterSelection.withExcluded(item);
+                    filterChangedItems.add(item);
+                }
+            }
+            for (final T item : addedItems) {
+                final FilterSelection<T> included = newFilterSelection.withoutExcluded(item);
+                if (included != newFilterSelection && included.contains(item)) {
+                    filterChangedItems.add(item);
+                }
+                newFilterSelection = included;
+            }
+        }
+
+        // the actual changes, known before the selection is updated
+        final Set<T> selectedItems = addedItems.stream()
+                .filter(item -> item != null && !isSelected(item))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        final Set<T> deselectedItems = removedItems.stream()
+                .filter(this::isSelected)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        final FilterSelection<T> filterSelection = newFilterSelection;
+        updateSelection(store -> {
             // order of add / remove does not matter since no duplicates
-            set.removeAll(removedItems);
-            set.addAll(addedItems);
-        }, userOriginated, sortingNeeded);
+            SelectionStore<T> newStore = store.withoutAll(removedItems);
+            for (final T item : addedItems) {
+                if (item != null && (filterSelection == null || !filterSelection.contains(item))) {
+                    newStore = newStore.with(item);
+                }
+            }
+            return newStore;
+        }, filterSelection, selectedItems, deselectedItems, userOriginated);
+
+        // only these rows change their mark of being selected by a filter
+        filterChangedItems.forEach(getDataCommunicator()::refresh);
     }
 
-    private void updateSelection(final SerializableConsumer<Collection<T>> handler, final boolean userOriginated, final boolean sortingNeeded) {
-        final LinkedHashSet<T> oldSelection = new LinkedHashSet<>(getSelectedItems());
-        final List<T> selection = new ArrayList<>(getSelectedItems());
-        handler.accept(selection);
+    /**
+     * Updates the selection with the given handler and fires the events.
+     *
+     * @param handler returns the new store of the explicitly selected items
+     * @param filterSelection the new filter selection, {@code null} for none
+     * @param addedItems the items added to the selection, {@code null} to compute them when requested
+     * @param removedItems the items removed from the selection, {@code null} to compute them when requested
+     * @param userOriginated {@code true} if this was used originated, {@code false} if not
+     */
+    private void updateSelection(final SerializableFunction<SelectionStore<T>, SelectionStore<T>> handler, final FilterSelection<T> filterSelection,
+            final Set<T> addedItems, final Set<T> removedItems, final boolean userOriginated) {
+        // both stores are immutable, the old one is the old value without copying
+        final Set<T> oldSelection = getSelectedItems();
+        final SelectionStore<T> oldStore = this.selectionStore;
+        final FilterSelection<T> oldFilterSelection = this.filterSelection;
+        this.selectionStore = handler.apply(oldStore);
+        this.filterSelection = filterSelection;
+
+        // sorted again when the popup is opened or the field loses focus, so the rows do not jump while the user selects items
+        this.sortingSelectionOutdated = true;
+
+        updateSelectedKeys(oldStore);
+
+        if (hasListeners(MultiSelectionEvent.class)) {
+            fireEvent(new MultiSelectionEvent<>(this, oldSelection, userOriginated));
+        }
+        if (hasListeners(SelectionDeltaEvent.class)) {
+            final Set<T> newSelection = getSelectedItems();
+            fireEvent(new SelectionDeltaEvent<>(this, addedItems != null ? () -> addedItems : () -> difference(newSelection, oldSelection),
+                    removedItems != null ? () -> removedItems : () -> difference(oldSelection, newSelection), userOriginated));
+        }
 
-        if (sortingNeeded) {
-            this.sortingSelection = Collections.unmodifiableCollection(selection);
+        // the client derives the checked state from the selected keys, the rows are only sent again if they are marked by a filter selection
+        if (filterSelection != oldFilterSelection) {
+            getDataCommunicator().reset();
+        }
+    }
+
+    /**
+     * Returns the class declaring the selection field.
+     *
+     * @return the super class
+     * @deprecated the selection is no longer set reflectively, this method is not used anymore, the selection is kept in a {@link SelectionStore}
+     */
+    @Deprecated
+    protected Class<?> getSelectionBaseClass() {
+        return this.getClass()
+                .getSuperclass();
+    }
+
+    /**
+     * Sorts the items by the selection again if it has changed since they were last sorted. Called when the popup is opened or the field loses focus,
+     * so the rows do not jump while the user selects items.
+     */
+    private void updateSorting() {
+        if (!this.sortingSelectionOutdated) {
+            return;
+        }
+        this.sortingSelectionOutdated = false;
+        final Collection<T> previousSelection = this.sortingSelection;
+        final SelectionStore<T> previousStore = this.sortingStore;
+        this.sortingSelection = getSelectedItems();
+        this.sortingStore = this.selectionStore;
+        if (this.selectedFirstComparator == null) {
+            // the order of other data providers does not depend on the selection
+            return;
         }
 
-        // TODO selection is private, have to use reflection (remove later)
-        try {
-            final Field f1 = getSelectionBaseClass().getDeclaredField("selection");
-            f1.setAccessible(true);
-            f1.set(this, selection);
+        // only the changed items move within the precomputed order
+        final List<T> addedItems = new ArrayList<>();
+        final List<T> removedItems = new ArrayList<>();
+        if (this.filterSelection == null && !(previousSelection instanceof FilterSelectionView)) {
+            this.selectionStore.diff(previousStore, addedItems::add, removedItems::add);
         }
-        catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException e) {
-            e.printStackTrace();
+        this.selectedFirstComparator.moveSelected(previousSelection, this.sortingSelection, addedItems, removedItems);
+        if (addedItems.isEmpty() && removedItems.isEmpty() && this.filterSelection == null && !(previousSelection instanceof FilterSelectionView)) {
+            // selected and deselected again
+            return;
         }
 
-        doSetSelectedKeys(selection);
+        // the rows have moved, the client fetches the shown ones again
+        rowsChanged();
+        getDataCommunicator().reset();
+    }
 
-        fireEvent(new MultiSelectionEvent<>(this, oldSelection, userOriginated));
+    /**
+     * Updates the keys of the items added to or removed from the selection since the given store. Only the changed keys are sent to the client with
+     * the next response.
+     *
+     * @param previous the store before the change
+     */
+    private void updateSelectedKeys(final SelectionStore<T> previous) {
+        final List<T> addedItems = new ArrayList<>();
+        this.selectionStore.diff(previous, item -> {
+            final String key = itemToKey(item);
+            this.selectedItemKeysById.put(getItemId(item), key);
+            this.selectedItemKeys = this.selectedItemKeys.with(key);
+            addedItems.add(item);
+        }, item -> {
+            final String key = this.selectedItemKeysById.remove(getItemId(item));
+            if (key != null) {
+                this.selectedItemKeys = this.selectedItemKeys.without(key);
+            }
+        });
+        markAsDirty();
 
-        getDataProvider().refreshAll();
+        updateCaptionItems(previous, addedItems);
+        updateSelectedItemsCaption();
     }
 
-    protected Class<?> getSelectionBaseClass() {
-        return this.getClass()
-                .getSuperclass();
+    /**
+     * Updates the items shown in the text field after the selection has changed. They only change if one of them has been removed or if all
+     * selected items were shown, so the other selected items are not looked at.
+     *
+     * @param previous the store before the change
+     * @param addedItems the items added since the previous store, in selection order
+     */
+    private void updateCaptionItems(final SelectionStore<T> previous, final List<T> addedItems) {
+        final boolean allShown = this.captionItems.size() == previous.size();
+        boolean shownItemRemoved = false;
+        for (int i = this.captionItems.size() - 1; i >= 0; i--) {
+            if (!this.selectionStore.contains(this.captionItems.get(i))) {
+                this.captionItems.remove(i);
+                this.captionItemCharacters -= this.captionItemCaptions.remove(i)
+                        .length();
+                shownItemRemoved = true;
+            }
+        }
+
+        if (allShown) {
+            // the added items follow the shown ones
+            for (final T item : addedItems) {
+                if (!addCaptionItem(item)) {
+                    break;
+                }
+            }
+        }
+        else if (shownItemRemoved) {
+            fillCaptionItems();
+        }
+    }
+
+    /**
+     * Shows the first selected items that fit into the text field.
+     */
+    private void fillCaptionItems() {
+        this.captionItems.clear();
+        this.captionItemCaptions.clear();
+        this.captionItemCharacters = 0;
+        // every caption but the first one needs at least the separator
+        for (final T item : this.selectionStore.first(this.selectionCaptionLength / 2 + 1)) {
+            if (!addCaptionItem(item)) {
+                break;
+            }
+        }
     }
 
     /**
-     * Sets the selected item based on the given communication key. If the key is {@code null}, clears the current selection if any.
+     * Shows the given item after the other items if its caption fits into the text field.
+     *
+     * @param item the item
+     * @return {@code true} if the item is shown, {@code false} if the caption is too long
+     */
+    private boolean addCaptionItem(final T item) {
+        final String caption = getCaption(item);
+        if (!fitsIntoSelectionCaption(this.captionItemCaptions, this.captionItemCharacters, caption)) {
+            return false;
+        }
+        this.captionItems.add(item);
+        this.captionItemCaptions.add(caption);
+        this.captionItemCharacters += caption.length();
+        return true;
+    }
+
+    private String getCaption(final T item) {
+        final String caption = getCachedItemCaptionGenerator().apply(item);
+        return caption != null ? caption : "";
+    }
+
+    /**
+     * Checks whether another caption fits into the text field.
+     *
+     * @param captions the captions shown
+     * @param characters the sum of the lengths of the captions shown
+     * @param caption the other caption
+     * @return {@code true} if the caption fits or no caption is shown yet
+     */
+    private boolean fitsIntoSelectionCaption(final List<String> captions, final int characters, final String caption) {
+        return captions.isEmpty() || characters + caption.length() + 2 * captions.size() <= this.selectionCaptionLength;
+    }
+
+    /**
+     * Replaces the key of a selected item if the key mapper has assigned a new one. The new key is sent to the client with the selection changes in
+     * {@link #beforeClientResponse(boolean)}, until then the row of the item is marked as selected.
+     *
+     * @param item the selected item
+     * @param key the key the item is sent with
+     */
+    private void updateSelectedItemKey(final T item, final String key) {
+        final String selectedKey = this.selectedItemKeysById.put(getItemId(item), key);
+        if (!key.equals(selectedKey)) {
+            this.selectedItemKeys = (selectedKey != null ? this.selectedItemKeys.without(selectedKey) : this.selectedItemKeys).with(key);
+            markAsDirty();
+        }
+    }
+
+    /**
+     * Sets the selected item based on the given communication key. If the key is {@code null}, clears the current selection if any. Only the changed
+     * keys are sent to the client with the next response.
      *
      * @param items the selected items or {@code null} to clear selection
      */
     protected void doSetSelectedKeys(final List<T> items) {
-        final Set<String> keys = itemsToKeys(items);
-
-        getState().selectedItemKeys = keys;
+        this.selectedItemKeys = this.selectedItemKeys.cleared();
+        this.selectedItemKeysById.clear();
+        if (items != null) {
+            for (final T item : items) {
+                if (item != null) {
+                    final String key = itemToKey(item);
+                    this.selectedItemKeysById.put(getItemId(item), key);
+                    this.selectedItemKeys = this.selectedItemKeys.with(key);
+                }
+            }
+        }
+        markAsDirty();
 
+        fillCaptionItems();
         updateSelectedItemsCaption();
     }
 
+    /**
+     * Returns the items of a selection that are not contained in another selection.
+     *
+     * @param selection the selection whose items are returned
+     * @param otherSelection the selection whose items are left out
+     * @return the difference of both selections
+     */
+    private static <T> Set<T> difference(final Set<T> selection, final Set<T> otherSelection) {
+        return selection.stream()
+                .filter(item -> !otherSelection.contains(item))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * Returns the id of an item in the current data provider.
+     *
+     * @param item the item
+     * @return the id identifying the item
+     */
+    private Object getItemId(final T item) {
+        return internalGetDataProvider().getId(item);
+    }
+
     private void updateSelectedItemsCaption() {
-        final List<T> items = new ArrayList<>();
-
-        if (getState().selectedItemKeys != null && !getState().selectedItemKeys.isEmpty()) {
-            for (final String selectedItemKey : getState().selectedItemKeys) {
-                final T value = getDataCommunicator().getKeyMapper()
-                        .get(selectedItemKey);
-                if (value != null) {
-                    items.add(value);
+        int selectedCount = this.selectionStore.size();
+        List<String> captions = this.captionItemCaptions;
+        if (this.filterSelection != null) {
+            // counted once per data version, kept up to date by the changes
+            selectedCount = getSelectedItems().size();
+            if (this.captionItems.size() == this.selectionStore.size()) {
+                // all explicitly selected items are shown, the first items of the filter selection follow
+                captions = new ArrayList<>(this.captionItemCaptions);
+                int characters = this.captionItemCharacters;
+                final Iterator<T> items = this.filterSelection.stream(this::fetchFilteredItems)
+                        .iterator();
+                while (items.hasNext()) {
+                    final String caption = getCaption(items.next());
+                    if (!fitsIntoSelectionCaption(captions, characters, caption)) {
+                        break;
+                    }
+                    captions.add(caption);
+                    characters += caption.length();
                 }
             }
         }
 
-        getState().selectedItemsCaption = this.inputTextFieldCaptionGenerator.apply(items);
+        getState().selectedItemsCaption = this.selectionCaptionGenerator.apply(selectedCount, Collections.unmodifiableList(captions));
     }
 
     /**
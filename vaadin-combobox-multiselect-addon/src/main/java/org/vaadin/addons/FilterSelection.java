@@ -0,0 +1,252 @@
+package org.vaadin.addons;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.vaadin.server.SerializableFunction;
+import com.vaadin.server.SerializablePredicate;
+
+/**
+ * Immutable symbolic selection of all items matching a sequence of filters, used when "select all" should not materialize every matching item.
+ * <p>
+ * Every select all or clear with a filter is recorded as a step. An item is selected if the last step whose filter matches the item was a select all
+ * step and the item has not been deselected explicitly afterwards. Steps that are overridden by a later step are dropped. The explicit deselections
+ * are kept by the id of the item, like the explicitly selected items in the {@link SelectionStore}.
+ * <p>
+ * The number of selected items is counted once per data version and then kept up to date by the explicit deselections.
+ *
+ * @param <T> item type
+ */
+final class FilterSelection<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * A select all or clear for one filter.
+     *
+     * @param <T> item type
+     */
+    private static final class Step<T> implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String filter;
+        private final SerializablePredicate<T> matcher;
+        private final boolean selected;
+
+        Step(final String filter, final SerializablePredicate<T> matcher, final boolean selected) {
+            this.filter = filter;
+            this.matcher = matcher;
+            this.selected = selected;
+        }
+    }
+
+    private final SerializableFunction<T, Object> idProvider;
+    private final List<Step<T>> steps;
+
+    /**
+     * Explicitly deselected items by their id.
+     */
+    private final Map<Object, T> excluded;
+
+    /**
+     * Number of selected items, {@code -1} if not counted yet, and the data version it was counted for.
+     */
+    private transient int size = -1;
+    private transient int sizeVersion;
+
+    /**
+     * Constructs an empty filter selection.
+     *
+     * @param idProvider returns the id identifying an item, not {@code null}
+     */
+    FilterSelection(final SerializableFunction<T, Object> idProvider) {
+        this(idProvider, Collections.emptyList(), Collections.emptyMap());
+    }
+
+    private FilterSelection(final SerializableFunction<T, Object> idProvider, final List<Step<T>> steps, final Map<Object, T> excluded) {
+        this.idProvider = idProvider;
+        this.steps = steps;
+        this.excluded = excluded;
+    }
+
+    private FilterSelection(final List<Step<T>> steps, final Map<Object, T> excluded, final FilterSelection<T> counted, final int sizeChange) {
+        this(counted.idProvider, steps, excluded);
+        if (counted.size >= 0) {
+            this.size = counted.size + sizeChange;
+            this.sizeVersion = counted.sizeVersion;
+        }
+    }
+
+    /**
+     * Returns a copy of this selection with all items matching the given filter selected or deselected.
+     *
+     * @param filter the filter text as typed by the user
+     * @param matcher predicate testing whether an item matches the filter, not {@code null}
+     * @param selected {@code true} for select all, {@code false} for clear
+     * @return the new filter selection
+     */
+    FilterSelection<T> withStep(final String filter, final SerializablePredicate<T> matcher, final boolean selected) {
+        final String filterText = filter == null ? "" : filter;
+        final List<Step<T>> newSteps = new ArrayList<>();
+        if (!filterText.isEmpty()) {
+            // an empty filter matches all items and overrides all steps, the same filter overrides the steps for it
+            for (final Step<T> step : this.steps) {
+                if (!step.filter.equals(filterText) && (step.selected || !newSteps.isEmpty())) {
+                    newSteps.add(step);
+                }
+            }
+        }
+        // a clear step is only needed if an earlier step selects items
+        if (selected || !newSteps.isEmpty()) {
+            newSteps.add(new Step<>(filterText, matcher, selected));
+        }
+
+        // a later step wins over explicit deselections of the items it matches
+        final Map<Object, T> newExcluded = new HashMap<>(this.excluded);
+        newExcluded.values()
+                .removeIf(matcher);
+
+        return new FilterSelection<>(this.idProvider, Collections.unmodifiableList(newSteps), Collections.unmodifiableMap(newExcluded));
+    }
+
+    /**
+     * Returns a copy of this selection where the given item is explicitly deselected.
+     *
+     * @param item the item to deselect
+     * @return the new filter selection
+     */
+    FilterSelection<T> withExcluded(final T item) {
+        if (!contains(item)) {
+            return this;
+        }
+        final Map<Object, T> newExcluded = new HashMap<>(this.excluded);
+        newExcluded.put(this.idProvider.apply(item), item);
+        return new FilterSelection<>(this.steps, Collections.unmodifiableMap(newExcluded), this, -1);
+    }
+
+    /**
+     * Returns a copy of this selection where an explicit deselection of the given item is removed.
+     *
+     * @param item the item not to deselect explicitly anymore
+     * @return the new filter selection
+     */
+    FilterSelection<T> withoutExcluded(final T item) {
+        if (!isExcluded(item)) {
+            return this;
+        }
+        final Map<Object, T> newExcluded = new HashMap<>(this.excluded);
+        newExcluded.remove(this.idProvider.apply(item));
+        final FilterSelection<T> included = new FilterSelection<>(this.steps, Collections.unmodifiableMap(newExcluded), this, 0);
+        if (included.size >= 0 && included.contains(item)) {
+            included.size++;
+        }
+        return included;
+    }
+
+    /**
+     * Returns a copy of this selection without the explicit deselections of items that are not fetched anymore, e.g. because they have been removed
+     * from the data provider.
+     *
+     * @param fetcher function returning all items matching a filter text
+     * @return the new filter selection, or this selection if nothing has been removed
+     */
+    FilterSelection<T> withoutStaleExclusions(final Function<String, Stream<T>> fetcher) {
+        if (this.excluded.isEmpty()) {
+            return this;
+        }
+        final Map<Object, T> newExcluded = new HashMap<>();
+        IntStream.range(0, this.steps.size())
+                .filter(step -> this.steps.get(step).selected)
+                .forEach(step -> fetcher.apply(this.steps.get(step).filter)
+                         .filter(this::isExcluded)
+                         .forEach(item -> newExcluded.put(this.idProvider.apply(item), item)));
+        if (newExcluded.size() == this.excluded.size()) {
+            return this;
+        }
+        return new FilterSelection<>(this.idProvider, this.steps, Collections.unmodifiableMap(newExcluded));
+    }
+
+    /**
+     * Checks whether this selection has no steps, i.e. selects no items.
+     *
+     * @return {@code true} if no items are selected
+     */
+    boolean isEmpty() {
+        return this.steps.isEmpty();
+    }
+
+    /**
+     * Returns the number of selected items. They are counted on the first call for a data version, afterwards the count is kept up to date by the
+     * explicit deselections.
+     *
+     * @param fetcher function returning all items matching a filter text
+     * @param version version of the data, changed whenever the items may have changed
+     * @return the number of selected items
+     */
+    int size(final Function<String, Stream<T>> fetcher, final int version) {
+        if (this.size < 0 || this.sizeVersion != version) {
+            this.size = (int) stream(fetcher).count();
+            this.sizeVersion = version;
+        }
+        return this.size;
+    }
+
+    /**
+     * Checks whether the given item has been deselected explicitly.
+     *
+     * @param item the item to check
+     * @return {@code true} if the item is explicitly deselected
+     */
+    boolean isExcluded(final T item) {
+        return this.excluded.containsKey(this.idProvider.apply(item));
+    }
+
+    /**
+     * Checks whether the given item is selected by this filter selection.
+     *
+     * @param item the item to check
+     * @return {@code true} if the item is selected
+     */
+    boolean contains(final T item) {
+        if (isExcluded(item)) {
+            return false;
+        }
+        final int step = getDecidingStep(item);
+        return step >= 0 && this.steps.get(step).selected;
+    }
+
+    /**
+     * Streams all selected items. Every select all step is fetched with its own filter, items are only returned by the step deciding about them so
+     * that no item is returned twice.
+     *
+     * @param fetcher function returning all items matching a filter text
+     * @return stream of the selected items
+     */
+    Stream<T> stream(final Function<String, Stream<T>> fetcher) {
+        return IntStream.range(0, this.steps.size())
+                .filter(step -> this.steps.get(step).selected)
+                .boxed()
+                .flatMap(step -> fetcher.apply(this.steps.get(step).filter)
+                         .filter(item -> !isExcluded(item) && getDecidingStep(item) == step));
+    }
+
+    /**
+     * Index of the last step matching the given item.
+     */
+    private int getDecidingStep(final T item) {
+        for (int i = this.steps.size() - 1; i >= 0; i--) {
+            if (this.steps.get(i).matcher.test(item)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,93 @@
+package org.vaadin.addons;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Read-only view of a selection consisting of explicitly selected items and a {@link FilterSelection}. The matching items are streamed from the data
+ * provider on demand, so the view does not hold them in memory. The explicitly selected items are usually not selected by the filter selection, so
+ * the size is the sum of both parts. Items in both parts, e.g. explicitly selected items matching a select all step after they have been refreshed,
+ * are only returned and counted once.
+ *
+ * @param <T> item type
+ */
+final class FilterSelectionView<T> extends AbstractSet<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Fetches all items matching a filter text.
+     *
+     * @param <T> item type
+     */
+    @FunctionalInterface
+    interface Fetcher<T> extends Serializable {
+        Stream<T> fetch(String filter);
+    }
+
+    private final Set<T> explicitItems;
+    private final FilterSelection<T> filterSelection;
+    private final Fetcher<T> fetcher;
+    private final int version;
+
+    /**
+     * Number of items, {@code -1} if not counted yet.
+     */
+    private transient int size = -1;
+
+    /**
+     * Constructs a view of the given selection.
+     *
+     * @param explicitItems explicitly selected items, not modified afterwards
+     * @param filterSelection the symbolic part of the selection
+     * @param fetcher fetcher for the items matching a filter
+     * @param version version of the data, changed whenever the items may have changed
+     */
+    FilterSelectionView(final Set<T> explicitItems, final FilterSelection<T> filterSelection, final Fetcher<T> fetcher, final int version) {
+        this.explicitItems = explicitItems;
+        this.filterSelection = filterSelection;
+        this.fetcher = fetcher;
+        this.version = version;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean contains(final Object o) {
+        return this.explicitItems.contains(o) || this.filterSelection.contains((T) o);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return stream().iterator();
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return Stream.concat(this.explicitItems.stream(), this.filterSelection.stream(this.fetcher::fetch)
+                             .filter(item -> !this.explicitItems.contains(item)));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.explicitItems.isEmpty() && (this.filterSelection.isEmpty() || size() == 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The matching items are only counted once per data version, see {@link FilterSelection#size(java.util.function.Function, int)}. If an
+     * explicitly selected item is also selected by the filter selection, the items are counted by streaming them instead.
+     */
+    @Override
+    public int size() {
+        if (this.size < 0) {
+            this.size = this.explicitItems.stream()
+                    .anyMatch(this.filterSelection::contains) ? (int) stream().count()
+                            : this.explicitItems.size() + this.filterSelection.size(this.fetcher::fetch, this.version);
+        }
+        return this.size;
+    }
+}
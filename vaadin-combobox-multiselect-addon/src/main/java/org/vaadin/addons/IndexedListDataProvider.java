@@ -0,0 +1,129 @@
+package org.vaadin.addons;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.vaadin.data.provider.ListDataProvider;
+import com.vaadin.data.provider.Query;
+import com.vaadin.server.SerializableComparator;
+import com.vaadin.server.SerializablePredicate;
+
+/**
+ * List data provider answering queries filtered by a {@link CaptionIndex.Filter} from the matching positions of the caption index instead of testing
+ * every item. With a {@link SelectedFirstComparator} as sort comparator, the items are ordered from the precomputed caption order of the index instead
+ * of being sorted for every page. Without an index, the captions are generated once per sort instead of per comparison. All other queries are
+ * handled by {@link ListDataProvider}.
+ *
+ * @param <T> item type
+ */
+class IndexedListDataProvider<T> extends ListDataProvider<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a new indexed list data provider.
+     *
+     * @param items the initial data, not {@code null}
+     */
+    IndexedListDataProvider(final Collection<T> items) {
+        super(items);
+    }
+
+    @Override
+    public int size(final Query<T, SerializablePredicate<T>> query) {
+        final Optional<CaptionIndex.Filter<T>> indexFilter = getIndexFilter(query);
+        if (!indexFilter.isPresent()) {
+            return super.size(query);
+        }
+
+        return indexFilter.get()
+                .getMatches().length;
+    }
+
+    @Override
+    public Stream<T> fetch(final Query<T, SerializablePredicate<T>> query) {
+        final CaptionIndex.Filter<T> indexFilter = getIndexFilter(query).orElse(null);
+        final boolean unfiltered = !query.getFilter()
+                .isPresent() && getFilter() == null;
+
+        final SelectedFirstComparator<T> indexOrder = getIndexOrder(query).orElse(null);
+        if (indexOrder != null && (unfiltered || indexFilter != null && indexFilter.getIndex() == indexOrder.getIndex())) {
+            final CaptionIndex<T> index = indexOrder.getIndex();
+            return indexOrder.order(index, unfiltered ? null : indexFilter.getMatches())
+                    .skip(query.getOffset())
+                    .limit(query.getLimit())
+                    .mapToObj(index::getItem);
+        }
+
+        if (indexFilter == null) {
+            final SerializableComparator<T> sortComparator = getSortComparator();
+            if (query.getInMemorySorting() == null && sortComparator instanceof SelectedFirstComparator) {
+                return ((SelectedFirstComparator<T>) sortComparator).sort(getFilteredItems(query))
+                        .skip(query.getOffset())
+                        .limit(query.getLimit());
+            }
+            return super.fetch(query);
+        }
+
+        final CaptionIndex<T> index = indexFilter.getIndex();
+        final Stream<T> matches = IntStream.of(indexFilter.getMatches())
+                .mapToObj(index::getItem);
+
+        final Optional<Comparator<T>> comparator = Stream.of(query.getInMemorySorting(), getSortComparator())
+                .filter(Objects::nonNull)
+                .reduce(Comparator::thenComparing);
+
+        return (comparator.isPresent() ? matches.sorted(comparator.get()) : matches).skip(query.getOffset())
+                .limit(query.getLimit());
+    }
+
+    /**
+     * Returns the items matching the filter of this data provider and the filter of the query.
+     */
+    private Stream<T> getFilteredItems(final Query<T, SerializablePredicate<T>> query) {
+        Stream<T> items = getItems().stream();
+        if (getFilter() != null) {
+            items = items.filter(getFilter());
+        }
+        if (query.getFilter()
+                .isPresent()) {
+            items = items.filter(query.getFilter()
+                    .get());
+        }
+        return items;
+    }
+
+    /**
+     * Returns the filter of the query if it can be answered by the caption index, i.e. the index has been built for the current items and no
+     * additional filter is set on this data provider.
+     */
+    @SuppressWarnings("unchecked")
+    private Optional<CaptionIndex.Filter<T>> getIndexFilter(final Query<T, SerializablePredicate<T>> query) {
+        if (getFilter() != null) {
+            return Optional.empty();
+        }
+        return query.getFilter()
+                .filter(CaptionIndex.Filter.class::isInstance)
+                .map(filter -> (CaptionIndex.Filter<T>) filter)
+                .filter(filter -> filter.getIndex()
+                        .isIndexOf(getItems()));
+    }
+
+    /**
+     * Returns the sort comparator if the items can be ordered by the caption index, i.e. no other sorting is requested, the captions are indexed and
+     * the index has been built for the current items.
+     */
+    private Optional<SelectedFirstComparator<T>> getIndexOrder(final Query<T, SerializablePredicate<T>> query) {
+        final SerializableComparator<T> sortComparator = getSortComparator();
+        if (query.getInMemorySorting() != null || !(sortComparator instanceof SelectedFirstComparator)) {
+            return Optional.empty();
+        }
+        final SelectedFirstComparator<T> indexOrder = (SelectedFirstComparator<T>) sortComparator;
+        final CaptionIndex<T> index = indexOrder.getIndex();
+        return index != null && index.isIndexOf(getItems()) ? Optional.of(indexOrder) : Optional.empty();
+    }
+}
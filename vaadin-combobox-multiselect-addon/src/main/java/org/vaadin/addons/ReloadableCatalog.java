@@ -0,0 +1,108 @@
+package org.vaadin.addons;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vaadin.shared.Registration;
+import com.vaadin.ui.ItemCaptionGenerator;
+
+/**
+ * Shared catalog whose items can be replaced while components are using it. A reload builds the new items and their indexes on a background thread
+ * and then publishes them at once, components keep reading the previous snapshot without blocking until they have switched.
+ * <p>
+ * Attached components using the catalog are notified through {@link com.vaadin.ui.UI#access(com.vaadin.server.Command)} and switch to the new items
+ * if they are visible, hidden components switch when they are shown again.
+ *
+ * @param <T> item type
+ */
+public class ReloadableCatalog<T> extends SharedCatalog<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Not serialized, a catalog is serialized as a reference to the instance of the running JVM.
+     */
+    private transient Executor executor;
+
+    private transient List<Runnable> reloadListeners;
+
+    /**
+     * Numbers the reloads, a reload finishing after a later one is not published.
+     */
+    private final AtomicLong reloadSequence = new AtomicLong();
+
+    /**
+     * Builds a catalog of the given items, reloads are built in the common fork join pool.
+     *
+     * @param items the initial items, copied, not {@code null}
+     * @param itemCaptionGenerator the caption generator, not {@code null}
+     * @param locale the locale for the case insensitive filtering, {@code null} for {@link Locale#ROOT}
+     */
+    public ReloadableCatalog(final Collection<T> items, final ItemCaptionGenerator<T> itemCaptionGenerator, final Locale locale) {
+        this(items, itemCaptionGenerator, locale, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds a catalog of the given items.
+     *
+     * @param items the initial items, copied, not {@code null}
+     * @param itemCaptionGenerator the caption generator, not {@code null}
+     * @param locale the locale for the case insensitive filtering, {@code null} for {@link Locale#ROOT}
+     * @param executor the executor building the reloaded items, not {@code null}
+     */
+    public ReloadableCatalog(final Collection<T> items, final ItemCaptionGenerator<T> itemCaptionGenerator, final Locale locale,
+            final Executor executor) {
+        super(items, itemCaptionGenerator, locale);
+        this.executor = Objects.requireNonNull(executor, "Executor cannot be null");
+    }
+
+    /**
+     * Replaces the items of this catalog. The indexes are built in the background, the returned future completes after the new items have been
+     * published and the components using this catalog have been notified. If a later reload has already been published when the items are built,
+     * they are dropped and the future completes without notifying the components.
+     *
+     * @param items the new items, copied, not {@code null}
+     * @return future completing when the new items are published
+     */
+    public CompletableFuture<Void> reload(final Collection<T> items) {
+        Objects.requireNonNull(items, "Items cannot be null");
+
+        // copied on the calling thread, the caller may change the collection afterwards
+        final List<T> copy = new ArrayList<>(items);
+        final long sequence = this.reloadSequence.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> createSnapshot(copy, sequence), this.executor != null ? this.executor : ForkJoinPool.commonPool())
+                .thenAccept(snapshot -> {
+                    if (publishSnapshot(snapshot)) {
+                        getReloadListeners().forEach(Runnable::run);
+                    }
+                });
+    }
+
+    /**
+     * Adds a listener called after new items have been published. The listener is called on the reloading thread.
+     *
+     * @param listener the listener, not {@code null}
+     * @return a registration for removing the listener
+     */
+    Registration addReloadListener(final Runnable listener) {
+        Objects.requireNonNull(listener, "Listener cannot be null");
+
+        getReloadListeners().add(listener);
+        return () -> getReloadListeners().remove(listener);
+    }
+
+    private synchronized List<Runnable> getReloadListeners() {
+        if (this.reloadListeners == null) {
+            this.reloadListeners = new CopyOnWriteArrayList<>();
+        }
+        return this.reloadListeners;
+    }
+}
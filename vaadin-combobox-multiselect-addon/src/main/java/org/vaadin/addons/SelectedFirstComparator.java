@@ -0,0 +1,233 @@
+package org.vaadin.addons;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.vaadin.server.SerializableComparator;
+import com.vaadin.server.SerializableSupplier;
+import com.vaadin.ui.ItemCaptionGenerator;
+
+/**
+ * Sort order of the items of an in-memory data provider: selected items first, each part ordered by caption ignoring case. If the captions are
+ * indexed, the items are ordered by the normalized captions of the {@link CaptionIndex}, taken from its ranks so that neither the caption generator
+ * nor a string comparison is needed per comparison. Otherwise the captions are compared with {@link String#compareToIgnoreCase(String)}.
+ * <p>
+ * {@link IndexedListDataProvider} does not use this class as a comparator but calls {@link #order(CaptionIndex, int[])}, which puts the selected
+ * items in front of the precomputed caption order without sorting or copying all items. Without an index it calls {@link #sort(Stream)}, which
+ * generates every caption once per sort instead of twice per comparison.
+ *
+ * @param <T> item type
+ */
+final class SelectedFirstComparator<T> implements SerializableComparator<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private static final Comparator<SortKey<?>> SORT_KEY_ORDER = Comparator.<SortKey<?>, Boolean> comparing(key -> !key.selected)
+            .thenComparing(key -> key.caption, String::compareToIgnoreCase);
+
+    private final SerializableSupplier<CaptionIndex<T>> indexSupplier;
+    private final SerializableSupplier<Collection<T>> selectionSupplier;
+    private final SerializableSupplier<ItemCaptionGenerator<T>> captionGeneratorSupplier;
+
+    private transient CaptionIndex<T> lastIndex;
+    private transient int[] lastPositions;
+    private transient int[] lastCaptionOrder;
+    private transient Collection<T> lastSelection;
+    private transient int[] lastSelectedOrder;
+
+    /**
+     * Constructs a comparator.
+     *
+     * @param indexSupplier supplies the current caption index, {@code null} if the captions are not indexed
+     * @param selectionSupplier supplies the items to sort first, replaced by a new collection on every change and with fast
+     *            {@link Collection#contains(Object)}
+     * @param captionGeneratorSupplier supplies the caption generator used if the captions are not indexed
+     */
+    SelectedFirstComparator(final SerializableSupplier<CaptionIndex<T>> indexSupplier, final SerializableSupplier<Collection<T>> selectionSupplier,
+            final SerializableSupplier<ItemCaptionGenerator<T>> captionGeneratorSupplier) {
+        this.indexSupplier = indexSupplier;
+        this.selectionSupplier = selectionSupplier;
+        this.captionGeneratorSupplier = captionGeneratorSupplier;
+    }
+
+    /**
+     * Returns the current caption index.
+     *
+     * @return the caption index, {@code null} if the captions are not indexed
+     */
+    CaptionIndex<T> getIndex() {
+        return this.indexSupplier.get();
+    }
+
+    @Override
+    public int compare(final T o1, final T o2) {
+        final Collection<T> selection = this.selectionSupplier.get();
+        final boolean selected1 = selection.contains(o1);
+        final boolean selected2 = selection.contains(o2);
+
+        if (selected1 && !selected2) {
+            return -1;
+        }
+        if (!selected1 && selected2) {
+            return 1;
+        }
+
+        final CaptionIndex<T> index = this.indexSupplier.get();
+        if (index == null) {
+            final ItemCaptionGenerator<T> captionGenerator = this.captionGeneratorSupplier.get();
+            return captionGenerator.apply(o1)
+                    .compareToIgnoreCase(captionGenerator.apply(o2));
+        }
+
+        // ranks order the items like their normalized captions, items added after building the index have no rank
+        final int rank1 = index.getRank(o1);
+        final int rank2 = index.getRank(o2);
+        if (rank1 >= 0 && rank2 >= 0) {
+            return Integer.compare(rank1, rank2);
+        }
+        return index.getNormalizedCaption(o1)
+                .compareTo(index.getNormalizedCaption(o2));
+    }
+
+    /**
+     * Sorts the given items in the order of this comparator. If the captions are not indexed, the selection state and the caption of every item are
+     * looked up once and the items are sorted by them.
+     *
+     * @param items the items to sort
+     * @return the sorted items
+     */
+    Stream<T> sort(final Stream<T> items) {
+        if (this.indexSupplier.get() != null) {
+            return items.sorted(this);
+        }
+
+        final Collection<T> selection = this.selectionSupplier.get();
+        final ItemCaptionGenerator<T> captionGenerator = this.captionGeneratorSupplier.get();
+        return items.map(item -> new SortKey<>(item, selection.contains(item), captionGenerator.apply(item)))
+                .sorted(SORT_KEY_ORDER)
+                .map(key -> key.item);
+    }
+
+    /**
+     * Returns the given positions of the caption index in the order of this comparator. Only the selected positions are collected, the others are
+     * streamed from the caption order, which is shared for all items and otherwise reused as long as neither the positions nor the index change.
+     *
+     * @param index the caption index
+     * @param positions the ascending positions to order, {@code null} for all items
+     * @return the ordered positions
+     */
+    IntStream order(final CaptionIndex<T> index, final int[] positions) {
+        if (index != this.lastIndex || positions != this.lastPositions) {
+            this.lastIndex = index;
+            this.lastPositions = positions;
+            this.lastCaptionOrder = positions == null ? index.getRankOrder() : index.sortByRank(positions);
+            this.lastSelection = null;
+        }
+        final int[] captionOrder = this.lastCaptionOrder;
+
+        // iterating a filter selection would fetch from the data provider again
+        final Collection<T> selection = this.selectionSupplier.get();
+        final boolean filterSelection = selection instanceof FilterSelectionView;
+        if (!filterSelection && selection.isEmpty()) {
+            this.lastSelection = selection;
+            this.lastSelectedOrder = NO_POSITIONS;
+            return IntStream.of(captionOrder);
+        }
+        if (selection != this.lastSelection) {
+            this.lastSelection = selection;
+            this.lastSelectedOrder = filterSelection || selection.size() > captionOrder.length ? IntStream.of(captionOrder)
+                    .filter(position -> selection.contains(index.getItem(position)))
+                    .toArray() : getSelectedOrder(index, positions, selection);
+        }
+
+        return IntStream.concat(IntStream.of(this.lastSelectedOrder), IntStream.of(captionOrder)
+                .filter(position -> !selection.contains(index.getItem(position))));
+    }
+
+    /**
+     * Moves the given items into or out of the selected part of the order, so that the next {@link #order(CaptionIndex, int[])} does not have to
+     * collect and sort all selected positions again. Only done if the order has last been built for the previous selection, otherwise the selected
+     * positions are collected again.
+     *
+     * @param previousSelection the selection the items were sorted by before
+     * @param selection the new selection, supplied from now on
+     * @param addedItems the items selected since the previous selection
+     * @param removedItems the items deselected since the previous selection
+     */
+    void moveSelected(final Collection<T> previousSelection, final Collection<T> selection, final Collection<T> addedItems,
+            final Collection<T> removedItems) {
+        final CaptionIndex<T> index = this.lastIndex;
+        if (this.lastSelection != previousSelection || previousSelection instanceof FilterSelectionView || selection instanceof FilterSelectionView
+                || index == null || index != this.indexSupplier.get()) {
+            return;
+        }
+
+        final int[] addedOrder = index.sortByRank(getPositions(index, this.lastPositions, addedItems));
+        final BitSet removedPositions = new BitSet(index.size());
+        IntStream.of(getPositions(index, this.lastPositions, removedItems))
+                .forEach(removedPositions::set);
+
+        // both parts are in caption order, merged like in a merge sort
+        final int[] previousOrder = this.lastSelectedOrder;
+        final int[] selectedOrder = new int[previousOrder.length + addedOrder.length];
+        int length = 0;
+        int added = 0;
+        for (final int position : previousOrder) {
+            if (removedPositions.get(position)) {
+                continue;
+            }
+            while (added < addedOrder.length && compareRanks(index, addedOrder[added], position) < 0) {
+                selectedOrder[length++] = addedOrder[added++];
+            }
+            selectedOrder[length++] = position;
+        }
+        while (added < addedOrder.length) {
+            selectedOrder[length++] = addedOrder[added++];
+        }
+
+        this.lastSelection = selection;
+        this.lastSelectedOrder = Arrays.copyOf(selectedOrder, length);
+    }
+
+    private static <T> int compareRanks(final CaptionIndex<T> index, final int position1, final int position2) {
+        final int result = Integer.compare(index.getRankAt(position1), index.getRankAt(position2));
+        return result != 0 ? result : Integer.compare(position1, position2);
+    }
+
+    /**
+     * Returns the distinct positions of the given items among the given positions.
+     */
+    private static <T> int[] getPositions(final CaptionIndex<T> index, final int[] positions, final Collection<T> items) {
+        return items.stream()
+                .mapToInt(index::indexOf)
+                .filter(position -> position >= 0 && (positions == null || Arrays.binarySearch(positions, position) >= 0))
+                .distinct()
+                .toArray();
+    }
+
+    private int[] getSelectedOrder(final CaptionIndex<T> index, final int[] positions, final Collection<T> selection) {
+        return index.sortByRank(getPositions(index, positions, selection));
+    }
+
+    /**
+     * An item with the values it is sorted by.
+     */
+    private static final class SortKey<T> {
+
+        private final T item;
+        private final boolean selected;
+        private final String caption;
+
+        SortKey(final T item, final boolean selected, final String caption) {
+            this.item = item;
+            this.selected = selected;
+            this.caption = caption;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.vaadin.addons;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+
+import com.vaadin.server.SerializableSupplier;
+import com.vaadin.ui.Component;
+
+/**
+ * Event fired after the selection of a {@link ComboBoxMultiselect} has changed, carrying only the items that have been added to or removed from the
+ * selection. Unlike {@link com.vaadin.event.selection.MultiSelectionEvent} neither the old nor the new selection is compared, so the effort does not
+ * depend on the size of the selection.
+ * <p>
+ * The changes of a selection by filter (select all or clear with a filter text) are only known symbolically, they are computed from the old and new
+ * selection when requested for the first time.
+ *
+ * @see SelectionDeltaListener
+ *
+ * @param <T> item type
+ */
+public class SelectionDeltaEvent<T> extends Component.Event {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean userOriginated;
+
+    private SerializableSupplier<Set<T>> addedItemsSupplier;
+    private SerializableSupplier<Set<T>> removedItemsSupplier;
+
+    private Set<T> addedItems;
+    private Set<T> removedItems;
+
+    /**
+     * Creates a new event.
+     *
+     * @param source the combo box whose selection has changed, not {@code null}
+     * @param addedItems the items added to the selection, not {@code null}
+     * @param removedItems the items removed from the selection, not {@code null}
+     * @param userOriginated {@code true} if the change was originated by the user, {@code false} if not
+     */
+    public SelectionDeltaEvent(final ComboBoxMultiselect<T> source, final Set<T> addedItems, final Set<T> removedItems, final boolean userOriginated) {
+        super(source);
+        this.addedItems = Collections.unmodifiableSet(Objects.requireNonNull(addedItems, "Added items cannot be null"));
+        this.removedItems = Collections.unmodifiableSet(Objects.requireNonNull(removedItems, "Removed items cannot be null"));
+        this.userOriginated = userOriginated;
+    }
+
+    /**
+     * Creates a new event whose changes are computed when requested for the first time.
+     *
+     * @param source the combo box whose selection has changed
+     * @param addedItemsSupplier computes the items added to the selection
+     * @param removedItemsSupplier computes the items removed from the selection
+     * @param userOriginated {@code true} if the change was originated by the user, {@code false} if not
+     */
+    SelectionDeltaEvent(final ComboBoxMultiselect<T> source, final SerializableSupplier<Set<T>> addedItemsSupplier,
+            final SerializableSupplier<Set<T>> removedItemsSupplier, final boolean userOriginated) {
+        super(source);
+        this.addedItemsSupplier = addedItemsSupplier;
+        this.removedItemsSupplier = removedItemsSupplier;
+        this.userOriginated = userOriginated;
+    }
+
+    /**
+     * Returns the items added to the selection.
+     *
+     * @return the unmodifiable added items, may be empty
+     */
+    public Set<T> getAddedItems() {
+        if (this.addedItems == null) {
+            this.addedItems = Collections.unmodifiableSet(this.addedItemsSupplier.get());
+            this.addedItemsSupplier = null;
+        }
+        return this.addedItems;
+    }
+
+    /**
+     * Returns the items removed from the selection.
+     *
+     * @return the unmodifiable removed items, may be empty
+     */
+    public Set<T> getRemovedItems() {
+        if (this.removedItems == null) {
+            this.removedItems = Collections.unmodifiableSet(this.removedItemsSupplier.get());
+            this.removedItemsSupplier = null;
+        }
+        return this.removedItems;
+    }
+
+    /**
+     * Returns whether the change was originated by the user.
+     *
+     * @return {@code true} if the change was originated by the user, {@code false} if not
+     */
+    public boolean isUserOriginated() {
+        return this.userOriginated;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ComboBoxMultiselect<T> getSource() {
+        return (ComboBoxMultiselect<T>) super.getSource();
+    }
+}
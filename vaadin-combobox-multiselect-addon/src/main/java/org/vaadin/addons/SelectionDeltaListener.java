@@ -0,0 +1,29 @@
+package org.vaadin.addons;
+
+import java.lang.reflect.Method;
+
+import com.vaadin.event.SerializableEventListener;
+import com.vaadin.util.ReflectTools;
+
+/**
+ * Listener for the changes of the selection of a {@link ComboBoxMultiselect}.
+ *
+ * @see ComboBoxMultiselect#addSelectionDeltaListener(SelectionDeltaListener)
+ *
+ * @param <T> item type
+ */
+@FunctionalInterface
+public interface SelectionDeltaListener<T> extends SerializableEventListener {
+
+    /**
+     * The method called when the selection has changed.
+     */
+    Method SELECTION_CHANGE_METHOD = ReflectTools.findMethod(SelectionDeltaListener.class, "selectionChange", SelectionDeltaEvent.class);
+
+    /**
+     * Called after the selection has changed.
+     *
+     * @param event the event with the added and removed items, not {@code null}
+     */
+    void selectionChange(SelectionDeltaEvent<T> event);
+}
@@ -0,0 +1,594 @@
+package org.vaadin.addons;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.vaadin.server.SerializableFunction;
+
+/**
+ * Immutable set of the selected items of a {@link ComboBoxMultiselect}, kept in a hash array mapped trie. Adding, removing and finding an item only
+ * visit the path to it, a change copies that path and shares all other nodes with the previous store, so the previous store stays valid as the old
+ * value of a selection event without copying any items.
+ * <p>
+ * The items are identified by the ids of the data provider, like {@link com.vaadin.ui.AbstractMultiSelect} does, and are iterated in the order they
+ * have been added. The changes between two stores are found by comparing only the nodes that are not shared.
+ *
+ * @param <T> item type
+ */
+final class SelectionStore<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final SerializableFunction<T, Object> idProvider;
+
+    /**
+     * {@code null}, an {@link Entry}, a {@link Collision} or a {@link Node}.
+     */
+    private final Object root;
+    private final int size;
+    private final long nextSequence;
+
+    private transient Set<T> set;
+
+    private SelectionStore(final SerializableFunction<T, Object> idProvider, final Object root, final int size, final long nextSequence) {
+        this.idProvider = idProvider;
+        this.root = root;
+        this.size = size;
+        this.nextSequence = nextSequence;
+    }
+
+    /**
+     * Returns an empty store.
+     *
+     * @param idProvider returns the id identifying an item, not {@code null}
+     * @param <T> item type
+     * @return the empty store
+     */
+    static <T> SelectionStore<T> empty(final SerializableFunction<T, Object> idProvider) {
+        return new SelectionStore<>(idProvider, null, 0, 0);
+    }
+
+    /**
+     * Returns the number of items.
+     *
+     * @return the number of items
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Checks whether this store contains an item with the id of the given item.
+     *
+     * @param item the item
+     * @return {@code true} if the item is selected
+     */
+    boolean contains(final T item) {
+        if (item == null) {
+            return false;
+        }
+        final Object id = this.idProvider.apply(item);
+        return find(this.root, id, hash(id)) != null;
+    }
+
+    /**
+     * Returns a store with the given item added after all other items.
+     *
+     * @param item the item to add, not {@code null}
+     * @return the new store, this store if the item is contained already
+     */
+    SelectionStore<T> with(final T item) {
+        final Object id = this.idProvider.apply(item);
+        final int hash = hash(id);
+        if (find(this.root, id, hash) != null) {
+            return this;
+        }
+        return new SelectionStore<>(this.idProvider, put(this.root, new Entry(id, hash, item, this.nextSequence), 0), this.size + 1,
+                this.nextSequence + 1);
+    }
+
+    /**
+     * Returns a store with the given items added.
+     *
+     * @param items the items to add
+     * @return the new store
+     */
+    SelectionStore<T> withAll(final Collection<? extends T> items) {
+        SelectionStore<T> store = this;
+        for (final T item : items) {
+            store = store.with(item);
+        }
+        return store;
+    }
+
+    /**
+     * Returns a store where the item with the id of the given item is replaced by the given item, keeping its position.
+     *
+     * @param item the new instance of the item
+     * @return the new store, this store if the item is not contained
+     */
+    SelectionStore<T> withReplaced(final T item) {
+        final Object id = this.idProvider.apply(item);
+        final int hash = hash(id);
+        final Entry entry = find(this.root, id, hash);
+        if (entry == null || entry.item == item) {
+            return this;
+        }
+        return new SelectionStore<>(this.idProvider, put(this.root, new Entry(id, hash, item, entry.sequence), 0), this.size, this.nextSequence);
+    }
+
+    /**
+     * Returns a store without the given item.
+     *
+     * @param item the item to remove
+     * @return the new store, this store if the item is not contained
+     */
+    SelectionStore<T> without(final T item) {
+        if (item == null) {
+            return this;
+        }
+        final Object id = this.idProvider.apply(item);
+        final Object newRoot = remove(this.root, id, hash(id), 0);
+        if (newRoot == this.root) {
+            return this;
+        }
+        return new SelectionStore<>(this.idProvider, newRoot, this.size - 1, this.nextSequence);
+    }
+
+    /**
+     * Returns a store without the given items.
+     *
+     * @param items the items to remove
+     * @return the new store
+     */
+    SelectionStore<T> withoutAll(final Collection<? extends T> items) {
+        SelectionStore<T> store = this;
+        for (final T item : items) {
+            store = store.without(item);
+        }
+        return store;
+    }
+
+    /**
+     * Returns a store without the items matching the given predicate. All items are tested.
+     *
+     * @param predicate the predicate
+     * @return the new store
+     */
+    @SuppressWarnings("unchecked")
+    SelectionStore<T> withoutIf(final Predicate<? super T> predicate) {
+        final List<T> removedItems = new ArrayList<>();
+        forEach(this.root, entry -> {
+            if (predicate.test((T) entry.item)) {
+                removedItems.add((T) entry.item);
+            }
+        });
+        return withoutAll(removedItems);
+    }
+
+    /**
+     * Returns an empty store with the id provider of this store.
+     *
+     * @return the empty store
+     */
+    SelectionStore<T> cleared() {
+        return this.size == 0 ? this : new SelectionStore<>(this.idProvider, null, 0, this.nextSequence);
+    }
+
+    /**
+     * Reports the items added and removed since the given store. Only the nodes that are not shared between both stores are compared, so the
+     * effort depends on the number of changes, not on the number of items.
+     *
+     * @param previous the previous store
+     * @param added receives the items contained in this store only, in the order they have been added
+     * @param removed receives the items contained in the previous store only
+     */
+    @SuppressWarnings("unchecked")
+    void diff(final SelectionStore<T> previous, final Consumer<? super T> added, final Consumer<? super T> removed) {
+        final List<Entry> addedEntries = new ArrayList<>();
+        diff(previous.root, this.root, 0, addedEntries::add, entry -> removed.accept((T) entry.item));
+        addedEntries.sort(Comparator.comparingLong(entry -> entry.sequence));
+        addedEntries.forEach(entry -> added.accept((T) entry.item));
+    }
+
+    /**
+     * Returns the items as an unmodifiable set, iterated in the order they have been added. The order is only computed when the set is iterated.
+     *
+     * @return the items
+     */
+    Set<T> asSet() {
+        if (this.set == null) {
+            this.set = new ItemSet();
+        }
+        return this.set;
+    }
+
+    /**
+     * Returns the first items in the order they have been added. Only the returned items are sorted, not all items.
+     *
+     * @param count the maximum number of items
+     * @return the first items, at most {@code count}
+     */
+    @SuppressWarnings("unchecked")
+    List<T> first(final int count) {
+        if (count <= 0 || this.size == 0) {
+            return Collections.emptyList();
+        }
+        // keeps the entries added first, the entry added last is on top
+        final PriorityQueue<Entry> entries = new PriorityQueue<>(Math.min(count, this.size) + 1,
+                Comparator.comparingLong((final Entry entry) -> entry.sequence)
+                        .reversed());
+        forEach(this.root, entry -> {
+            entries.add(entry);
+            if (entries.size() > count) {
+                entries.poll();
+            }
+        });
+        final List<Entry> sortedEntries = new ArrayList<>(entries);
+        sortedEntries.sort(Comparator.comparingLong(entry -> entry.sequence));
+        final List<T> items = new ArrayList<>(sortedEntries.size());
+        sortedEntries.forEach(entry -> items.add((T) entry.item));
+        return items;
+    }
+
+    private static int hash(final Object id) {
+        final int hash = id.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int bit(final int hash, final int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static Entry find(Object slot, final Object id, final int hash) {
+        int shift = 0;
+        while (slot != null) {
+            if (slot instanceof Node) {
+                final Node node = (Node) slot;
+                final int bit = bit(hash, shift);
+                if ((node.bitmap & bit) == 0) {
+                    return null;
+                }
+                slot = node.slots[node.index(bit)];
+                shift += BITS;
+            }
+            else if (slot instanceof Entry) {
+                final Entry entry = (Entry) slot;
+                return entry.matches(id, hash) ? entry : null;
+            }
+            else {
+                return ((Collision) slot).find(id, hash);
+            }
+        }
+        return null;
+    }
+
+    private static Object put(final Object slot, final Entry entry, final int shift) {
+        if (slot == null) {
+            return entry;
+        }
+        if (slot instanceof Node) {
+            final Node node = (Node) slot;
+            final int bit = bit(entry.hash, shift);
+            final int index = node.index(bit);
+            if ((node.bitmap & bit) == 0) {
+                return node.inserted(bit, index, entry);
+            }
+            final Object child = node.slots[index];
+            final Object newChild = put(child, entry, shift + BITS);
+            return newChild == child ? node : node.replaced(index, newChild);
+        }
+
+        final int slotHash = slot instanceof Entry ? ((Entry) slot).hash : ((Collision) slot).hash;
+        if (slotHash == entry.hash) {
+            if (slot instanceof Entry) {
+                return ((Entry) slot).matches(entry.id, entry.hash) ? entry : new Collision(entry.hash, new Entry[] { (Entry) slot, entry });
+            }
+            return ((Collision) slot).put(entry);
+        }
+        return merge(slot, slotHash, entry, shift);
+    }
+
+    /**
+     * Creates the nodes holding a leaf and an entry with different hashes.
+     */
+    private static Node merge(final Object leaf, final int leafHash, final Entry entry, final int shift) {
+        final int leafBit = bit(leafHash, shift);
+        final int entryBit = bit(entry.hash, shift);
+        if (leafBit == entryBit) {
+            return new Node(leafBit, new Object[] { merge(leaf, leafHash, entry, shift + BITS) });
+        }
+        return new Node(leafBit | entryBit, Integer.compareUnsigned(leafBit, entryBit) < 0 ? new Object[] { leaf, entry } : new Object[] { entry, leaf });
+    }
+
+    private static Object remove(final Object slot, final Object id, final int hash, final int shift) {
+        if (slot == null) {
+            return null;
+        }
+        if (slot instanceof Entry) {
+            return ((Entry) slot).matches(id, hash) ? null : slot;
+        }
+        if (slot instanceof Collision) {
+            return ((Collision) slot).removed(id, hash);
+        }
+
+        final Node node = (Node) slot;
+        final int bit = bit(hash, shift);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        final int index = node.index(bit);
+        final Object child = node.slots[index];
+        final Object newChild = remove(child, id, hash, shift + BITS);
+        if (newChild == child) {
+            return node;
+        }
+        if (newChild == null) {
+            if (node.slots.length == 1) {
+                return null;
+            }
+            if (node.slots.length == 2 && !(node.slots[1 - index] instanceof Node)) {
+                return node.slots[1 - index];
+            }
+            return node.removed(bit, index);
+        }
+        // a single leaf does not need a node of its own
+        return node.slots.length == 1 && !(newChild instanceof Node) ? newChild : node.replaced(index, newChild);
+    }
+
+    private static void forEach(final Object slot, final Consumer<Entry> consumer) {
+        if (slot instanceof Entry) {
+            consumer.accept((Entry) slot);
+        }
+        else if (slot instanceof Collision) {
+            Arrays.stream(((Collision) slot).entries)
+                    .forEach(consumer);
+        }
+        else if (slot instanceof Node) {
+            for (final Object child : ((Node) slot).slots) {
+                forEach(child, consumer);
+            }
+        }
+    }
+
+    private static void diff(final Object previous, final Object current, final int shift, final Consumer<Entry> added,
+            final Consumer<Entry> removed) {
+        if (previous == current) {
+            return;
+        }
+        if (previous == null) {
+            forEach(current, added);
+            return;
+        }
+        if (current == null) {
+            forEach(previous, removed);
+            return;
+        }
+
+        if (previous instanceof Node && current instanceof Node) {
+            final Node previousNode = (Node) previous;
+            final Node currentNode = (Node) current;
+            int bits = previousNode.bitmap | currentNode.bitmap;
+            while (bits != 0) {
+                final int bit = Integer.lowestOneBit(bits);
+                bits &= ~bit;
+                diff(previousNode.slot(bit), currentNode.slot(bit), shift + BITS, added, removed);
+            }
+            return;
+        }
+
+        // at least one side is a leaf with very few entries
+        if (previous instanceof Node) {
+            diffLeaf(current, previous, removed, added);
+        }
+        else {
+            diffLeaf(previous, current, added, removed);
+        }
+    }
+
+    /**
+     * Compares the entries of a leaf with the entries of any other slot.
+     *
+     * @param leaf the leaf
+     * @param other the other slot
+     * @param onlyInOther receives the entries of the other slot only
+     * @param onlyInLeaf receives the entries of the leaf only
+     */
+    private static void diffLeaf(final Object leaf, final Object other, final Consumer<Entry> onlyInOther, final Consumer<Entry> onlyInLeaf) {
+        final List<Entry> leafEntries = new ArrayList<>();
+        forEach(leaf, leafEntries::add);
+        final boolean[] found = new boolean[leafEntries.size()];
+        forEach(other, entry -> {
+            for (int i = 0; i < leafEntries.size(); i++) {
+                if (leafEntries.get(i)
+                        .matches(entry.id, entry.hash)) {
+                    found[i] = true;
+                    return;
+                }
+            }
+            onlyInOther.accept(entry);
+        });
+        for (int i = 0; i < found.length; i++) {
+            if (!found[i]) {
+                onlyInLeaf.accept(leafEntries.get(i));
+            }
+        }
+    }
+
+    /**
+     * Selected item with its id and the position it was added at.
+     */
+    private static final class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object id;
+        private final int hash;
+        private final Object item;
+        private final long sequence;
+
+        Entry(final Object id, final int hash, final Object item, final long sequence) {
+            this.id = id;
+            this.hash = hash;
+            this.item = item;
+            this.sequence = sequence;
+        }
+
+        boolean matches(final Object id, final int hash) {
+            return this.hash == hash && this.id.equals(id);
+        }
+    }
+
+    /**
+     * Entries whose ids have the same hash.
+     */
+    private static final class Collision implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int hash;
+        private final Entry[] entries;
+
+        Collision(final int hash, final Entry[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+        Entry find(final Object id, final int hash) {
+            for (final Entry entry : this.entries) {
+                if (entry.matches(id, hash)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        Collision put(final Entry entry) {
+            for (int i = 0; i < this.entries.length; i++) {
+                if (this.entries[i].matches(entry.id, entry.hash)) {
+                    final Entry[] newEntries = this.entries.clone();
+                    newEntries[i] = entry;
+                    return new Collision(this.hash, newEntries);
+                }
+            }
+            final Entry[] newEntries = Arrays.copyOf(this.entries, this.entries.length + 1);
+            newEntries[this.entries.length] = entry;
+            return new Collision(this.hash, newEntries);
+        }
+
+        Object removed(final Object id, final int hash) {
+            for (int i = 0; i < this.entries.length; i++) {
+                if (this.entries[i].matches(id, hash)) {
+                    if (this.entries.length == 2) {
+                        return this.entries[1 - i];
+                    }
+                    final Entry[] newEntries = new Entry[this.entries.length - 1];
+                    System.arraycopy(this.entries, 0, newEntries, 0, i);
+                    System.arraycopy(this.entries, i + 1, newEntries, i, newEntries.length - i);
+                    return new Collision(this.hash, newEntries);
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Inner node with a slot for every bit set in its bitmap.
+     */
+    private static final class Node implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int bitmap;
+        private final Object[] slots;
+
+        Node(final int bitmap, final Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        int index(final int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        Object slot(final int bit) {
+            return (this.bitmap & bit) == 0 ? null : this.slots[index(bit)];
+        }
+
+        Node inserted(final int bit, final int index, final Object slot) {
+            final Object[] newSlots = new Object[this.slots.length + 1];
+            System.arraycopy(this.slots, 0, newSlots, 0, index);
+            newSlots[index] = slot;
+            System.arraycopy(this.slots, index, newSlots, index + 1, this.slots.length - index);
+            return new Node(this.bitmap | bit, newSlots);
+        }
+
+        Node replaced(final int index, final Object slot) {
+            final Object[] newSlots = this.slots.clone();
+            newSlots[index] = slot;
+            return new Node(this.bitmap, newSlots);
+        }
+
+        Node removed(final int bit, final int index) {
+            final Object[] newSlots = new Object[this.slots.length - 1];
+            System.arraycopy(this.slots, 0, newSlots, 0, index);
+            System.arraycopy(this.slots, index + 1, newSlots, index, newSlots.length - index);
+            return new Node(this.bitmap & ~bit, newSlots);
+        }
+    }
+
+    /**
+     * Unmodifiable view of the items in the order they have been added.
+     */
+    private final class ItemSet extends AbstractSet<T> implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient List<T> orderedItems;
+
+        @Override
+        public int size() {
+            return SelectionStore.this.size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean contains(final Object o) {
+            try {
+                return SelectionStore.this.contains((T) o);
+            }
+            catch (final ClassCastException e) {
+                return false;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Iterator<T> iterator() {
+            if (this.orderedItems == null) {
+                final List<Entry> entries = new ArrayList<>(SelectionStore.this.size);
+                SelectionStore.forEach(SelectionStore.this.root, entries::add);
+                entries.sort(Comparator.comparingLong(entry -> entry.sequence));
+                final List<T> items = new ArrayList<>(entries.size());
+                entries.forEach(entry -> items.add((T) entry.item));
+                this.orderedItems = items;
+            }
+            return Collections.unmodifiableList(this.orderedItems)
+                    .iterator();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.vaadin.addons;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.vaadin.ui.ItemCaptionGenerator;
+
+/**
+ * Immutable, thread-safe set of items with their captions, sort order and search indexes, meant to be built once and shared by the
+ * {@link ComboBoxMultiselect} components of all sessions. Every component gets its own lightweight view with {@link ComboBoxMultiselect#setCatalog},
+ * so only the selection and the key mapping are kept per session.
+ * <p>
+ * The captions are generated and normalized with the caption generator and locale given here, changing them on a component has no effect on
+ * filtering and sorting.
+ * <p>
+ * A catalog is serialized as a reference to the instance of the running JVM, so serializing a session does not copy the items. Sessions can only be
+ * deserialized while the catalog is still in use, a catalog has to be built again after a restart.
+ *
+ * @see ReloadableCatalog
+ *
+ * @param <T> item type
+ */
+public class SharedCatalog<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The catalogs of this JVM by their id, for resolving serialized references.
+     */
+    private static final Map<String, WeakReference<SharedCatalog<?>>> CATALOGS = new ConcurrentHashMap<>();
+
+    private final String id = UUID.randomUUID()
+            .toString();
+
+    private final ItemCaptionGenerator<T> itemCaptionGenerator;
+    private final Locale locale;
+
+    /**
+     * Only replaced by {@link ReloadableCatalog}, readers never block.
+     */
+    private final AtomicReference<Snapshot<T>> snapshot;
+
+    /**
+     * Builds a catalog of the given items. All indexes are built immediately, so this may take a while for large collections.
+     *
+     * @param items the items, copied, not {@code null}
+     * @param itemCaptionGenerator the caption generator, not {@code null}
+     * @param locale the locale for the case insensitive filtering, {@code null} for {@link Locale#ROOT}
+     */
+    public SharedCatalog(final Collection<T> items, final ItemCaptionGenerator<T> itemCaptionGenerator, final Locale locale) {
+        Objects.requireNonNull(items, "Items cannot be null");
+        Objects.requireNonNull(itemCaptionGenerator, "Item caption generator cannot be null");
+
+        this.itemCaptionGenerator = itemCaptionGenerator;
+        this.locale = locale;
+        this.snapshot = new AtomicReference<>(createSnapshot(items, 0));
+
+        CATALOGS.values()
+                .removeIf(reference -> reference.get() == null);
+        CATALOGS.put(this.id, new WeakReference<>(this));
+    }
+
+    /**
+     * Builds a snapshot of the given items with the caption generator and locale of this catalog.
+     *
+     * @param items the items, copied
+     * @param sequence the number of the reload the snapshot is built for
+     * @return the new snapshot
+     */
+    final Snapshot<T> createSnapshot(final Collection<T> items, final long sequence) {
+        return new Snapshot<>(items, this.itemCaptionGenerator, this.locale, sequence);
+    }
+
+    /**
+     * Returns the current snapshot of the items and their index.
+     *
+     * @return the snapshot
+     */
+    Snapshot<T> getSnapshot() {
+        return this.snapshot.get();
+    }
+
+    /**
+     * Publishes a new snapshot unless a snapshot of a later reload has already been published.
+     *
+     * @param newSnapshot the new snapshot
+     * @return {@code true} if the snapshot has been published, {@code false} if it is outdated
+     */
+    boolean publishSnapshot(final Snapshot<T> newSnapshot) {
+        Snapshot<T> current;
+        do {
+            current = this.snapshot.get();
+            if (current.getSequence() >= newSnapshot.getSequence()) {
+                return false;
+            }
+        }
+        while (!this.snapshot.compareAndSet(current, newSnapshot));
+        return true;
+    }
+
+    /**
+     * Returns the items of this catalog.
+     *
+     * @return the unmodifiable items
+     */
+    public List<T> getItems() {
+        return getSnapshot().getItems();
+    }
+
+    /**
+     * Returns the caption generator the captions were generated with.
+     *
+     * @return the item caption generator
+     */
+    public ItemCaptionGenerator<T> getItemCaptionGenerator() {
+        return this.itemCaptionGenerator;
+    }
+
+    /**
+     * Returns the locale the captions were normalized with.
+     *
+     * @return the locale
+     */
+    public Locale getLocale() {
+        return getSnapshot().getIndex()
+                .getLocale();
+    }
+
+    /**
+     * Creates a data provider for one component. It does not copy any items, filtering and sorting are answered from the shared index of the current
+     * snapshot.
+     *
+     * @return a new view of this catalog
+     */
+    View<T> createView() {
+        return new View<>(this, getSnapshot());
+    }
+
+    /**
+     * Serializes a reference to this catalog instead of its items.
+     *
+     * @return the serialized reference
+     */
+    protected Object writeReplace() {
+        return new CatalogReference(this.id);
+    }
+
+    /**
+     * Serialized form of a catalog, resolved to the instance of the running JVM.
+     */
+    private static final class CatalogReference implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+
+        CatalogReference(final String id) {
+            this.id = id;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            final WeakReference<SharedCatalog<?>> reference = CATALOGS.get(this.id);
+            final SharedCatalog<?> catalog = reference != null ? reference.get() : null;
+            if (catalog == null) {
+                throw new InvalidObjectException("The shared catalog " + this.id + " is not available in this JVM");
+            }
+            return catalog;
+        }
+    }
+
+    /**
+     * Immutable items of a catalog with their caption index.
+     *
+     * @param <T> item type
+     */
+    static final class Snapshot<T> implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> items;
+        private final CaptionIndex<T> index;
+        private final long sequence;
+
+        Snapshot(final Collection<T> items, final ItemCaptionGenerator<T> itemCaptionGenerator, final Locale locale, final long sequence) {
+            this.items = Collections.unmodifiableList(new ArrayList<>(items));
+            this.index = new CaptionIndex<>(this.items, itemCaptionGenerator, locale).prepare();
+            this.sequence = sequence;
+        }
+
+        List<T> getItems() {
+            return this.items;
+        }
+
+        CaptionIndex<T> getIndex() {
+            return this.index;
+        }
+
+        long getSequence() {
+            return this.sequence;
+        }
+    }
+
+    /**
+     * Per component data provider of a shared catalog. A view keeps the snapshot it was created with, even if the catalog is reloaded. A deserialized
+     * view shows the current snapshot.
+     *
+     * @param <T> item type
+     */
+    static final class View<T> extends IndexedListDataProvider<T> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SharedCatalog<T> catalog;
+        private final Snapshot<T> snapshot;
+
+        View(final SharedCatalog<T> catalog, final Snapshot<T> snapshot) {
+            super(snapshot.getItems());
+            this.catalog = catalog;
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * Returns the catalog of this view.
+         *
+         * @return the catalog
+         */
+        SharedCatalog<T> getCatalog() {
+            return this.catalog;
+        }
+
+        /**
+         * Returns the index of the snapshot of this view.
+         *
+         * @return the caption index
+         */
+        CaptionIndex<T> getIndex() {
+            return this.snapshot.getIndex();
+        }
+
+        /**
+         * Checks whether this view shows the current snapshot of the catalog.
+         *
+         * @return {@code true} if the catalog has not been reloaded since this view was created
+         */
+        boolean isCurrent() {
+            return this.snapshot == this.catalog.getSnapshot();
+        }
+
+        /**
+         * Serializes only the catalog, not the items of the snapshot.
+         *
+         * @return the serialized view
+         */
+        private Object writeReplace() {
+            return new ViewReference<>(this.catalog);
+        }
+    }
+
+    /**
+     * Serialized form of a view, resolved to a new view of the catalog.
+     *
+     * @param <T> item type
+     */
+    private static final class ViewReference<T> implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SharedCatalog<T> catalog;
+
+        ViewReference(final SharedCatalog<T> catalog) {
+            this.catalog = catalog;
+        }
+
+        private Object readResolve() {
+            return this.catalog.createView();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.addons.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.dom.client.Element;
+import com.vaadin.client.ComputedStyle;
+
+/**
+ * Measures the width of captions with the text metrics of a canvas, so no
+ * element has to be added to the document and laid out. The widths are cached
+ * per font.
+ *
+ * For internal use only. May be removed or replaced in the future.
+ */
+class CaptionWidthCache {
+
+	/**
+	 * Number of cached widths after which the cache is cleared.
+	 */
+	private static final int MAX_SIZE = 1000;
+
+	private final JavaScriptObject context = createContext();
+
+	private final Map<String, Integer> widths = new HashMap<>();
+
+	private String font;
+
+	/**
+	 * Checks whether the browser can measure text on a canvas.
+	 *
+	 * @return <code>true</code> if the widths can be measured
+	 */
+	boolean isSupported() {
+		return this.context != null;
+	}
+
+	/**
+	 * Sets the font of the captions to the font of the given element. The
+	 * cached widths are dropped if the font has changed.
+	 *
+	 * @param element
+	 *            the element whose font is used
+	 */
+	void setFont(Element element) {
+		final ComputedStyle style = new ComputedStyle(element);
+		final String font = style.getProperty("fontStyle") + " " + style.getProperty("fontWeight") + " "
+				+ style.getProperty("fontSize") + " " + style.getProperty("fontFamily");
+		if (!font.equals(this.font)) {
+			this.font = font;
+			this.widths.clear();
+			setContextFont(this.context, font);
+		}
+	}
+
+	/**
+	 * Gets the width of a caption.
+	 *
+	 * @param caption
+	 *            the caption, not <code>null</code>
+	 * @return the width in pixels, rounded up
+	 */
+	int getWidth(String caption) {
+		Integer width = this.widths.get(caption);
+		if (width == null) {
+			if (this.widths.size() >= MAX_SIZE) {
+				this.widths.clear();
+			}
+			width = (int) Math.ceil(measureText(this.context, caption));
+			this.widths.put(caption, width);
+		}
+		return width;
+	}
+
+	private static native JavaScriptObject createContext()
+	/*-{
+	    var canvas = $doc.createElement("canvas");
+	    return canvas.getContext ? canvas.getContext("2d") : null;
+	}-*/;
+
+	private static native void setContextFont(JavaScriptObject context, String font)
+	/*-{
+	    context.font = font;
+	}-*/;
+
+	private static native double measureText(JavaScriptObject context, String text)
+	/*-{
+	    return context.measureText(text).width;
+	}-*/;
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.addons.client;
+
+import java.util.Set;
+
+import com.vaadin.shared.communication.ClientRpc;
+
+/**
+ * Server to client RPC interface for ComboBoxMultiselect.
+ *
+ * The selected item keys are sent as changes numbered by a version. The
+ * client asks for the complete selection with
+ * {@link ComboBoxMultiselectServerRpc#resyncSelection()} if a version is
+ * missing.
+ */
+public interface ComboBoxMultiselectClientRpc extends ClientRpc {
+	/**
+	 * Replaces the selected item keys.
+	 *
+	 * @param selectedItemKeys
+	 *            the keys of all selected items
+	 * @param version
+	 *            the version of the selection
+	 */
+	void setSelection(Set<String> selectedItemKeys, int version);
+
+	/**
+	 * Updates the selected item keys of the previous version.
+	 *
+	 * @param addedItemKeys
+	 *            the item keys added to selection
+	 * @param removedItemKeys
+	 *            the item keys removed from selection
+	 * @param version
+	 *            the version of the selection after this update
+	 */
+	void updateSelection(Set<String> addedItemKeys, Set<String> removedItemKeys, int version);
+
+	/**
+	 * Answers {@link ComboBoxMultiselectServerRpc#requestFirstSelectedIndex()}.
+	 *
+	 * @param index
+	 *            the index of the first selected item under the current
+	 *            filter, -1 if none
+	 */
+	void setFirstSelectedIndex(int index);
+}
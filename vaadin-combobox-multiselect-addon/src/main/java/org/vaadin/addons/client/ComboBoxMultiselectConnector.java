@@ -15,6 +15,8 @@
  */
 package org.vaadin.addons.client;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -53,16 +55,110 @@ implements HasRequiredIndicator, HasDataSource, SimpleManagedLayout, HasErrorInd
    
     private static final String CHECKED = "s";
 
+    /**
+     * Number of filtered pages kept for showing them again without waiting for
+     * the server.
+     */
+    private static final int PAGE_CACHE_SIZE = 50;
+
     private final ComboBoxMultiselectServerRpc rpc = getRpcProxy(ComboBoxMultiselectServerRpc.class);
 
     private final FocusAndBlurServerRpc focusAndBlurRpc = getRpcProxy(FocusAndBlurServerRpc.class);
 
     private Registration dataChangeHandlerRegistration;
 
+    /**
+     * Version of the selected item keys received from the server, -1 while
+     * waiting for the complete selection.
+     */
+    private int selectionVersion = -1;
+
+    /**
+     * Whether the page of the selected item is shown as soon as the server has
+     * sent its index.
+     */
+    private boolean waitingForFirstSelectedIndex = false;
+
+    /**
+     * Whether the next rows are rendered into the open popup without paging,
+     * instead of showing it again.
+     */
+    private boolean windowMoved = false;
+
+    /**
+     * The rows matching the last filter applied in the browser, narrowed down
+     * when the filter is extended.
+     */
+    private List<JsonObject> clientFilteredRows;
+
+    /**
+     * The id of the last filter request, echoed by the server in the state.
+     */
+    private int filterRequestId;
+
+    private String clientFilteredFilter;
+
+    private final PageCache<ComboBoxMultiselectSuggestion> pageCache = new PageCache<>(PAGE_CACHE_SIZE);
+
+    /**
+     * Whether the shown page has been taken from the page cache and the fresh
+     * rows have not been received yet. The server may have dropped the keys of
+     * the cached rows meanwhile.
+     */
+    private boolean cachedPageShown = false;
+
+    /**
+     * The position and caption of a suggestion clicked while a cached page was
+     * shown, it is selected when the fresh rows have been received.
+     */
+    private int pendingSuggestionIndex = -1;
+    private String pendingSuggestionCaption;
+
     @Override
     protected void init() {
         super.init();
         getWidget().connector = this;
+
+        registerRpc(ComboBoxMultiselectClientRpc.class, new ComboBoxMultiselectClientRpc() {
+
+            @Override
+            public void setSelection(final Set<String> selectedItemKeys, final int version) {
+                getWidget().serverSelectedKeys.clear();
+                getWidget().serverSelectedKeys.addAll(selectedItemKeys);
+                ComboBoxMultiselectConnector.this.selectionVersion = version;
+                onSelectionChange();
+            }
+
+            @Override
+            public void updateSelection(final Set<String> addedItemKeys, final Set<String> removedItemKeys, final int version) {
+                if (ComboBoxMultiselectConnector.this.selectionVersion < 0) {
+                    // the complete selection has already been requested
+                    return;
+                }
+                if (version != ComboBoxMultiselectConnector.this.selectionVersion + 1) {
+                    ComboBoxMultiselectConnector.this.selectionVersion = -1;
+                    ComboBoxMultiselectConnector.this.rpc.resyncSelection();
+                    return;
+                }
+
+                getWidget().serverSelectedKeys.removeAll(removedItemKeys);
+                getWidget().serverSelectedKeys.addAll(addedItemKeys);
+                ComboBoxMultiselectConnector.this.selectionVersion = version;
+                onSelectionChange();
+            }
+
+            @Override
+            public void setFirstSelectedIndex(final int index) {
+                if (!ComboBoxMultiselectConnector.this.waitingForFirstSelectedIndex) {
+                    return;
+                }
+                ComboBoxMultiselectConnector.this.waitingForFirstSelectedIndex = false;
+
+                final int pageLength = getWidget().pageLength;
+                getWidget().currentPage = index > 0 ? index / pageLength : 0;
+                getDataSource().ensureAvailability(getWidget().currentPage * pageLength, pageLength);
+            }
+        });
     }
 
     @Override
@@ -90,10 +186,15 @@ implements HasRequiredIndicator, HasDataSource, SimpleManagedLayout, HasErrorInd
         Profiler.leave("ComboBoxMultiselectConnector.onStateChanged update content");
     }
 
-    @OnStateChange({ "selectedItemKeys", "selectedItemsCaption" })
+    @OnStateChange("selectedItemsCaption")
     private void onSelectionChange() {
-        getDataReceivedHandler().updateSelectionFromServer(	getState().selectedItemKeys,
-                                                           	getState().selectedItemsCaption);
+        getDataReceivedHandler().updateSelectionFromServer(getState().selectedItemsCaption);
+    }
+
+    @OnStateChange("itemsVersion")
+    private void onItemsChange() {
+        this.pageCache.setItemsVersion(getState().itemsVersion);
+        clearClientFilteredRows();
     }
 
     @Override
@@ -159,10 +260,29 @@ implements HasRequiredIndicator, HasDataSource, SimpleManagedLayout, HasErrorInd
         if (!Objects.equals(filter, getWidget().lastFilter)) {
             getDataReceivedHandler().clearPendingNavigation();
 
-            this.rpc.setFilter(filter);
+            sendFilter(filter);
         }
     }
 
+    /*
+     * Sends the filter with the id of a new request.
+     */
+    private void sendFilter(final String filter) {
+        this.rpc.setFilter(filter, ++this.filterRequestId);
+    }
+
+    /**
+     * Returns the id of the last filter request sent to the server.
+     *
+     * This method is for internal use only and may be removed in future
+     * versions.
+     *
+     * @return the request id
+     */
+    public int getFilterRequestId() {
+        return this.filterRequestId;
+    }
+
     /**
      * Send a message to the server to request a page of items with the current
      * filter.
@@ -179,21 +299,126 @@ implements HasRequiredIndicator, HasDataSource, SimpleManagedLayout, HasErrorInd
      *            the filter to apply, never {@code null}
      */
     public void requestPage(int page, final String filter) {
+        if (getState().clientSideFiltering) {
+            // all items are fetched once, the filter is not sent
+            getWidget().lastFilter = filter;
+            getWidget().currentPage = page;
+            getWidget().windowStart = 0;
+            this.windowMoved = false;
+            refreshData();
+            return;
+        }
+
+        final boolean filterChanged = !Objects.equals(filter, getWidget().lastFilter);
         setFilter(filter);
 
         if (page < 0) {
-            if (getState().scrollToSelectedItem) {
-                // TODO this should be optimized not to try to fetch everything
-                getDataSource().ensureAvailability(0, getDataSource().size());
+            if (getState().scrollToSelectedItem && getWidget().pageLength > 0) {
+                // the server finds the page of the selected item, only that
+                // page is fetched
+                this.waitingForFirstSelectedIndex = true;
+                this.rpc.requestFirstSelectedIndex();
                 return;
             } else {
                 page = 0;
             }
         }
+        this.waitingForFirstSelectedIndex = false;
+        this.windowMoved = false;
+        getWidget().windowStart = 0;
 
         final int startIndex = Math.max(0, page * getWidget().pageLength);
-        
-        getDataSource().ensureAvailability(startIndex, getWidget().pageLength);
+
+        // show the page right away if it was shown before, it is still fetched
+        // again in case it has changed meanwhile
+        final PageCache.Page<ComboBoxMultiselectSuggestion> cachedPage = getWidget().pageLength > 0 ? this.pageCache.get(filter, page) : null;
+        if (cachedPage != null) {
+            getWidget().lastFilter = filter;
+            getWidget().currentPage = page;
+            getWidget().currentSuggestions.clear();
+            getWidget().currentSuggestions.addAll(cachedPage.getSuggestions());
+            getWidget().setTotalSuggestions(cachedPage.getTotalSuggestions());
+            this.cachedPageShown = true;
+            this.pendingSuggestionIndex = -1;
+            getDataReceivedHandler().dataReceived();
+
+            if (!filterChanged) {
+                // the rows would be answered from the cache of the data
+                // source, sending the filter again makes the server reset the
+                // rows and send them anew
+                sendFilter(filter);
+            }
+        }
+
+        getDataSource().ensureAvailability(startIndex, getFetchLength());
+    }
+
+    /**
+     * Moves the rendered rows of a popup without paging, fetching the rows
+     * that are not available yet.
+     *
+     * This method is for internal use only and may be removed in future
+     * versions.
+     *
+     * @param start
+     *            the index of the first row to render
+     */
+    public void requestWindow(final int start) {
+        getWidget().windowStart = start;
+        this.windowMoved = true;
+        if (getState().clientSideFiltering) {
+            refreshData();
+        } else {
+            getDataSource().ensureAvailability(start, VComboBoxMultiselect.SCROLL_WINDOW_SIZE);
+        }
+    }
+
+    /*
+     * Returns the number of rows shown at once, a window of rows if the popup
+     * is not paged.
+     */
+    private int getFetchLength() {
+        return getWidget().pageLength > 0 ? getWidget().pageLength : VComboBoxMultiselect.SCROLL_WINDOW_SIZE;
+    }
+
+    /**
+     * Defers the selection of a suggestion of a page shown from the page
+     * cache until the fresh rows have been received, since the server may
+     * have dropped the key of the cached row.
+     *
+     * This method is for internal use only and may be removed in future
+     * versions.
+     *
+     * @param suggestion
+     *            the clicked suggestion
+     * @return true if the selection has been deferred, false if the
+     *         suggestion can be selected right away
+     */
+    public boolean deferSuggestionSelection(final ComboBoxMultiselectSuggestion suggestion) {
+        if (!this.cachedPageShown) {
+            return false;
+        }
+        this.pendingSuggestionIndex = getWidget().currentSuggestions.indexOf(suggestion);
+        this.pendingSuggestionCaption = suggestion.getReplacementString();
+        return true;
+    }
+
+    /*
+     * Selects the suggestion clicked while a cached page was shown if the fresh
+     * rows still show the same item at its position.
+     */
+    private void selectPendingSuggestion() {
+        if (this.cachedPageShown || this.pendingSuggestionIndex < 0) {
+            return;
+        }
+        final int index = this.pendingSuggestionIndex;
+        this.pendingSuggestionIndex = -1;
+        if (index < getWidget().currentSuggestions.size()) {
+            final ComboBoxMultiselectSuggestion suggestion = getWidget().currentSuggestions.get(index);
+            if (Objects.equals(suggestion.getReplacementString(), this.pendingSuggestionCaption)) {
+                getWidget().onSuggestionSelected(suggestion);
+            }
+        }
     }
 
     /**
@@ -213,6 +438,25 @@ implements HasRequiredIndicator, HasDataSource, SimpleManagedLayout, HasErrorInd
         getDataReceivedHandler().clearPendingNavigation();
     }
 
+    /**
+     * Send a message to the server updating the current selection by ranges of
+     * rows of the current filter.
+     *
+     * This method is for internal use only and may be removed in future
+     * versions.
+     *
+     * @param addedRanges
+     *            the ranges of rows added to selection, pairs of first row and
+     *            number of rows
+     * @param removedRanges
+     *            the ranges of rows removed from selection, pairs of first row
+     *            and number of rows
+     */
+    public void sendSelectionRanges(final int[] addedRanges, final int[] removedRanges) {
+        this.rpc.updateSelectionRanges(addedRanges, removedRanges, getState().dataVersion);
+        getDataReceivedHandler().clearPendingNavigation();
+    }
+
     /**
      * Notify the server that the combo box received focus.
      *
@@ -254,9 +498,22 @@ implements HasRequiredIndicator, HasDataSource, SimpleManagedLayout, HasErrorInd
         this.rpc.blur();
     }
 
+    /**
+     * Notify the server that the popup is opened.
+     *
+     * This method is for internal use only and may be removed in future
+     * versions.
+     */
+    public void sendPopupOpened() {
+        this.rpc.popupOpened();
+    }
+
     @Override
     public void setDataSource(final DataSource<JsonObject> dataSource) {
         super.setDataSource(dataSource);
+        if (dataSource instanceof AbstractRemoteDataSource) {
+            ((AbstractRemoteDataSource<JsonObject>) dataSource).setCacheStrategy(new PrefetchCacheStrategy());
+        }
         this.dataChangeHandlerRegistration = dataSource.addDataChangeHandler(new PagedDataChangeHandler(dataSource));
     }
 
@@ -272,20 +529,57 @@ implements HasRequiredIndicator, HasDataSource, SimpleManagedLayout, HasErrorInd
     }
 
     private void refreshData() {
+        if (getState().clientSideFiltering) {
+            refreshClientFilteredData();
+            return;
+        }
+        if (this.waitingForFirstSelectedIndex) {
+            // the rows of another page may arrive before the index
+            return;
+        }
+
         updateCurrentPage();
 
-        final int start = getWidget().currentPage * getWidget().pageLength;
-        int end = (getDataSource().size() - start) >= getWidget().pageLength ? getWidget().pageLength : getDataSource().size() - start;
+        final int start = getStart(getDataSource().size());
+        final int end = Math.min(start + getFetchLength(), getDataSource().size());
         getWidget().currentSuggestions.clear();
 
-        if (start > 0) {
-            end = end + start;
-        }
-
         updateSuggestions(start, end);
         getWidget().setTotalSuggestions(getDataSource().size());
 
-        getDataReceivedHandler().dataReceived();
+        // rows received while a newer filter is pending belong to the previous filter
+        if (!getWidget().isFilterRequestPending()) {
+            if (getWidget().pageLength > 0) {
+                this.pageCache.put(getWidget().lastFilter, getWidget().currentPage, getWidget().currentSuggestions, getDataSource().size());
+            }
+            this.cachedPageShown = false;
+        }
+
+        showSuggestions();
+        selectPendingSuggestion();
+    }
+
+    /*
+     * Returns the first row to show, the window of a popup without paging is
+     * kept within the rows.
+     */
+    private int getStart(final int size) {
+        if (getWidget().pageLength > 0) {
+            return getWidget().currentPage * getWidget().pageLength;
+        }
+        getWidget().windowStart = Math.max(0, Math.min(getWidget().windowStart, size - VComboBoxMultiselect.SCROLL_WINDOW_SIZE));
+        return getWidget().windowStart;
+    }
+
+    private void showSuggestions() {
+        if (this.windowMoved) {
+            this.windowMoved = false;
+            if (getWidget().suggestionPopup.isShowing()) {
+                getWidget().suggestionPopup.menu.updateWindow();
+            }
+        } else {
+            getDataReceivedHandler().dataReceived();
+        }
     }
 
     private void updateSuggestions(final int start, final int end) {
@@ -297,21 +591,7 @@ implements HasRequiredIndicator, HasDataSource, SimpleManagedLayout, HasErrorInd
             }
             
             if (row != null) {
-                final String key = getRowKey(row);
-
-                final String caption = row.getString(DataCommunicatorConstants.NAME);
-                final String style = row.getString(ComboBoxMultiselectConstants.STYLE);
-                final String untranslatedIconUri = row.getString(ComboBoxMultiselectConstants.ICON);
-                final boolean checked = row.getString(CHECKED) != null ? Boolean.TRUE : Boolean.FALSE;
-                
-                final ComboBoxMultiselectSuggestion suggestion = getWidget().new ComboBoxMultiselectSuggestion(key, caption,
-                                                                                                               style, untranslatedIconUri);
-                suggestion.setChecked(checked);
-                if (checked) {
-                    getWidget().selectedOptionKeys.add(key);
-                }
-                
-                getWidget().currentSuggestions.add(suggestion);
+                addSuggestion(row);
             } else {
                 // there is not enough options to fill the page
                 return;
@@ -319,31 +599,182 @@ implements HasRequiredIndicator, HasDataSource, SimpleManagedLayout, HasErrorInd
         }
     }
 
-    private boolean isFirstPage() {
-        return getWidget().currentPage == 0;
+    private void addSuggestion(final JsonObject row) {
+        final String key = getRowKey(row);
+
+        final String caption = row.getString(DataCommunicatorConstants.NAME);
+        final String style = row.getString(ComboBoxMultiselectConstants.STYLE);
+        final String untranslatedIconUri = row.getString(ComboBoxMultiselectConstants.ICON);
+
+        // explicitly selected items are checked by the selected keys, only
+        // items selected by a filter and selected items with a key not sent
+        // yet are marked in their rows
+        if (row.hasKey(CHECKED)) {
+            getWidget().filterSelectedKeys.add(key);
+            getWidget().selectedOptionKeys.add(key);
+        } else if (getWidget().filterSelectedKeys.remove(key) && !getWidget().serverSelectedKeys.contains(key)) {
+            getWidget().selectedOptionKeys.remove(key);
+        }
+
+        final ComboBoxMultiselectSuggestion suggestion = getWidget().new ComboBoxMultiselectSuggestion(key, caption,
+                                                                                                       style, untranslatedIconUri);
+
+        getWidget().currentSuggestions.add(suggestion);
     }
 
-    private void updateCurrentPage() {
-        // try to find selected item if requested
-        if (getState().scrollToSelectedItem && getState().pageLength > 0 && getWidget().currentPage < 0
-                && getWidget().selectedOptionKeys != null) {
-            // search for the item with the selected key
+    /*
+     * Filters and pages all items in the browser, fetching them first if
+     * necessary.
+     */
+    private void refreshClientFilteredData() {
+        final List<JsonObject> rows = getClientFilteredRows(getWidget().lastFilter);
+        if (rows == null) {
+            // refreshed again when the items are available
+            getDataSource().ensureAvailability(0, getDataSource().size());
+            return;
+        }
+
+        final int pageLength = getWidget().pageLength;
+        if (getWidget().currentPage < 0) {
             getWidget().currentPage = 0;
-            for (int i = 0; i < getDataSource().size(); ++i) {
-                final JsonObject row = getDataSource().getRow(i);
-                if (row != null) {
-                    final String key = AbstractListingConnector.getRowKey(row);
-                    if (getWidget().selectedOptionKeys.contains(key)) {
-                        getWidget().currentPage = i / getState().pageLength;
+            if (getState().scrollToSelectedItem && pageLength > 0 && getWidget().selectedOptionKeys != null) {
+                for (int i = 0; i < rows.size(); ++i) {
+                    if (getWidget().selectedOptionKeys.contains(getRowKey(rows.get(i)))) {
+                        getWidget().currentPage = i / pageLength;
                         break;
                     }
                 }
             }
-        } else if (getWidget().currentPage < 0) {
+        }
+
+        final int start = getStart(rows.size());
+        final int end = Math.min(start + getFetchLength(), rows.size());
+        getWidget().currentSuggestions.clear();
+        for (int i = start; i < end; ++i) {
+            addSuggestion(rows.get(i));
+        }
+        getWidget().setTotalSuggestions(rows.size());
+
+        showSuggestions();
+    }
+
+    /**
+     * Returns the rows whose caption contains the filter, ignoring case, in
+     * the order of the server. If the filter extends the previous one, only
+     * the previous matches are checked again.
+     * <p>
+     * The browser converts to lower case without a locale, like the server
+     * does for the default caption filter.
+     *
+     * @param filter
+     *            the filter, never {@code null}
+     * @return the matching rows or {@code null} if not all rows have been
+     *         received yet
+     */
+    private List<JsonObject> getClientFilteredRows(final String filter) {
+        final String lowerCaseFilter = filter.toLowerCase();
+        if (this.clientFilteredRows != null && lowerCaseFilter.equals(this.clientFilteredFilter)) {
+            return this.clientFilteredRows;
+        }
+
+        final List<JsonObject> rows = new ArrayList<>();
+        if (this.clientFilteredRows != null && lowerCaseFilter.contains(this.clientFilteredFilter)) {
+            for (final JsonObject row : this.clientFilteredRows) {
+                if (matchesClientFilter(row, lowerCaseFilter)) {
+                    rows.add(row);
+                }
+            }
+        } else {
+            for (int i = 0; i < getDataSource().size(); ++i) {
+                final JsonObject row = getDataSource().getRow(i);
+                if (row == null) {
+                    return null;
+                }
+                if (matchesClientFilter(row, lowerCaseFilter)) {
+                    rows.add(row);
+                }
+            }
+        }
+
+        this.clientFilteredRows = rows;
+        this.clientFilteredFilter = lowerCaseFilter;
+        return rows;
+    }
+
+    private static boolean matchesClientFilter(final JsonObject row, final String lowerCaseFilter) {
+        return lowerCaseFilter.isEmpty() || row.getString(DataCommunicatorConstants.NAME)
+                .toLowerCase()
+                .contains(lowerCaseFilter);
+    }
+
+    /*
+     * Drops the rows filtered in the browser after the rows have changed.
+     */
+    private void clearClientFilteredRows() {
+        this.clientFilteredRows = null;
+        this.clientFilteredFilter = null;
+    }
+
+    /**
+     * Returns the keys of a range of rows of the current filter if the items
+     * are filtered in the browser.
+     *
+     * This method is for internal use only and may be removed in future
+     * versions.
+     *
+     * @param start
+     *            the first row
+     * @param length
+     *            the number of rows
+     * @return the keys of the rows or {@code null} if the server filters
+     */
+    public List<String> getClientFilteredKeys(final int start, final int length) {
+        if (!getState().clientSideFiltering) {
+            return null;
+        }
+
+        final List<String> keys = new ArrayList<>();
+        final List<JsonObject> rows = getClientFilteredRows(getWidget().lastFilter);
+        if (rows != null) {
+            for (int i = Math.max(0, start); i < Math.min(start + length, rows.size()); ++i) {
+                keys.add(getRowKey(rows.get(i)));
+            }
+        }
+        return keys;
+    }
+
+    private boolean isFirstPage() {
+        return getWidget().currentPage == 0;
+    }
+
+    private void updateCurrentPage() {
+        // the page of the selected item is found by the server
+        if (getWidget().currentPage < 0) {
             getWidget().currentPage = 0;
         }
     }
 
+    /**
+     * Keeps the pages before and after the requested page, so that paging is
+     * answered from the cache. The number of pages is read from the state on
+     * every request.
+     */
+    private class PrefetchCacheStrategy extends CacheStrategy.AbstractBasicSymmetricalCacheStrategy {
+
+        @Override
+        public int getMinimumCacheSize(final int pageSize) {
+            return pageSize * getState().prefetchPages;
+        }
+
+        @Override
+        public int getMaximumCacheSize(final int pageSize) {
+            // fetch one page more than needed, so not every page change needs a
+            // request
+            final int prefetchPages = getState().prefetchPages;
+            return pageSize * (prefetchPages > 0 ? prefetchPages + 1 : 0);
+        }
+    }
+
     private static final Logger LOGGER = Logger.getLogger(ComboBoxMultiselectConnector.class.getName());
 
     private class PagedDataChangeHandler implements DataChangeHandler {
@@ -356,17 +787,27 @@ implements HasRequiredIndicator, HasDataSource, SimpleManagedLayout, HasErrorInd
 
         @Override
         public void dataUpdated(final int firstRowIndex, final int numberOfRows) {
-            // NOOP since dataAvailable is always triggered afterwards
+            // the rows are shown since dataAvailable is always triggered
+            // afterwards, only the rows filtered in the browser are outdated
+            clearClientFilteredRows();
         }
 
         @Override
         public void dataRemoved(final int firstRowIndex, final int numberOfRows) {
-            // NOOP since dataAvailable is always triggered afterwards
+            // the rows are shown since dataAvailable is always triggered
+            // afterwards, only the shown pages and the rows filtered in the
+            // browser are outdated
+            ComboBoxMultiselectConnector.this.pageCache.clear();
+            clearClientFilteredRows();
         }
 
         @Override
         public void dataAdded(final int firstRowIndex, final int numberOfRows) {
-            // NOOP since dataAvailable is always triggered afterwards
+            // the rows are shown since dataAvailable is always triggered
+            // afterwards, only the shown pages and the rows filtered in the
+            // browser are outdated
+            ComboBoxMultiselectConnector.this.pageCache.clear();
+            clearClientFilteredRows();
         }
 
         @Override
@@ -376,15 +817,25 @@ implements HasRequiredIndicator, HasDataSource, SimpleManagedLayout, HasErrorInd
 
         @Override
         public void resetDataAndSize(final int estimatedNewDataSize) {
-            if (getState().pageLength == 0) {
+            // the server resets the rows on every filter change, the cached
+            // pages are only dropped with a new items version
+            clearClientFilteredRows();
+
+            if (getState().clientSideFiltering) {
+                // the browser filters, so all items are needed
+                this.dataSource.ensureAvailability(0, estimatedNewDataSize);
+            } else if (getState().pageLength == 0) {
+                // only the window of rows is fetched, the rows around it when
+                // the popup is scrolled
+                ComboBoxMultiselectConnector.this.windowMoved = false;
+                getWidget().windowStart = 0;
                 if (getWidget().suggestionPopup.isShowing()) {
-                    this.dataSource.ensureAvailability(0, estimatedNewDataSize);
+                    this.dataSource.ensureAvailability(0, VComboBoxMultiselect.SCROLL_WINDOW_SIZE);
                 }
                 // else lets just wait till the popup is opened before
-                // everything is fetched to it. this could be optimized later on
-                // to fetch everything if in-memory data is used.
+                // the rows are fetched to it
             } else {        	
-                this.dataSource.ensureAvailability(getState().pageLength * getWidget().currentPage, getState().pageLength);
+                this.dataSource.ensureAvailability(getState().pageLength * Math.max(0, getWidget().currentPage), getState().pageLength);
             }
         }
 
@@ -41,8 +41,11 @@ public interface ComboBoxMultiselectServerRpc extends ServerRpc {
 	 * @param filter
 	 *            filter string interpreted according to the current filtering
 	 *            mode
+	 * @param requestId
+	 *            increasing id of the request, echoed in the state for
+	 *            matching the response to the request
 	 */
-	public void setFilter(String filter);
+	public void setFilter(String filter, int requestId);
 
 	/**
 	 * Updates the selected items based on their keys.
@@ -56,6 +59,22 @@ public interface ComboBoxMultiselectServerRpc extends ServerRpc {
 	 */
 	void updateSelection(Set<String> addedItemKeys, Set<String> removedItemKeys, boolean sortingNeeded);
 
+	/**
+	 * Updates the selected items based on ranges of rows of the current
+	 * filter. The ranges are ignored if the rows have changed since the given
+	 * data version, the client then gets the complete selection.
+	 *
+	 * @param addedRanges
+	 *            the ranges of rows added to selection, pairs of first row and
+	 *            number of rows
+	 * @param removedRanges
+	 *            the ranges of rows removed from selection, pairs of first row
+	 *            and number of rows
+	 * @param dataVersion
+	 *            the data version the rows were received with
+	 */
+	void updateSelectionRanges(int[] addedRanges, int[] removedRanges, int dataVersion);
+
 	/**
 	 * Send the blur event.
 	 */
@@ -70,4 +89,23 @@ public interface ComboBoxMultiselectServerRpc extends ServerRpc {
 	 * Clear.
 	 */
 	public void clear(String filter);
+
+	/**
+	 * Notifies the server that the popup is opened, so that it sorts the items
+	 * by the selection again if the selection has changed.
+	 */
+	void popupOpened();
+
+	/**
+	 * Requests the index of the first selected item under the current filter,
+	 * answered with
+	 * {@link ComboBoxMultiselectClientRpc#setFirstSelectedIndex(int)}.
+	 */
+	void requestFirstSelectedIndex();
+
+	/**
+	 * Requests the complete selection after a selection update has been
+	 * missed.
+	 */
+	void resyncSelection();
 }
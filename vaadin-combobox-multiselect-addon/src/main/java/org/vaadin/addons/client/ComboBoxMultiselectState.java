@@ -37,7 +37,13 @@ public class ComboBoxMultiselectState extends AbstractMultiSelectState {
     /**
      * The keys of the currently selected items or {@code null} if no item is
      * selected.
+     *
+     * @deprecated no longer filled, the selected keys are sent with
+     *             {@link ComboBoxMultiselectClientRpc#setSelection} and
+     *             {@link ComboBoxMultiselectClientRpc#updateSelection} so that
+     *             a change does not resend all keys
      */
+    @Deprecated
     public Set<String> selectedItemKeys = new LinkedHashSet<>();
 
     /**
@@ -63,6 +69,20 @@ public class ComboBoxMultiselectState extends AbstractMultiSelectState {
     @DelegateToWidget
     public int pageLength;
 
+    /**
+     * Maximum time in milliseconds to wait after the last key stroke before
+     * sending the filter, 0 to send it immediately.
+     */
+    @DelegateToWidget
+    @NoLayout
+    public int filterDebounceDelay = 150;
+
+    /**
+     * Number of pages to fetch before and after the shown page.
+     */
+    @NoLayout
+    public int prefetchPages = 3;
+
     /**
      * Suggestion pop-up's width as a CSS string. By using relative units (e.g.
      * "50%") it's possible to set the popup's width relative to the
@@ -84,6 +104,34 @@ public class ComboBoxMultiselectState extends AbstractMultiSelectState {
      */
     public boolean scrollToSelectedItem = false;
 
+    /**
+     * True if the client has all items and filters them itself, false if the
+     * server filters.
+     */
+    public boolean clientSideFiltering = false;
+
+    /**
+     * Version of the rows of the current filter, changed whenever the filter is
+     * set or the items or their order change.
+     */
+    @NoLayout
+    public int dataVersion;
+
+    /**
+     * Version of the items and their order, changed whenever the items or
+     * their order change. Unlike {@link #dataVersion} it does not change with
+     * the filter.
+     */
+    @NoLayout
+    public int itemsVersion;
+
+    /**
+     * The id of the last filter request handled by the server, for matching
+     * the response to the request.
+     */
+    @NoLayout
+    public int filterRequestId;
+
     /**
      * The caption of the currently selected items or {@code null} if no item is
      * selected.
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2000-2016 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.addons.client;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recently shown pages of suggestions by filter and page, least recently used
+ * first. The pages are kept while the user changes the filter, they are only
+ * dropped when the items version changes, i.e. when the items, their order or
+ * their rows have changed on the server.
+ *
+ * For internal use only. May be removed or replaced in the future.
+ *
+ * @param <S>
+ *            suggestion type
+ */
+class PageCache<S> {
+
+	private final Map<String, Page<S>> pages;
+
+	private int itemsVersion;
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param maxSize
+	 *            the number of pages after which the least recently used page
+	 *            is dropped
+	 */
+	PageCache(final int maxSize) {
+		this.pages = new LinkedHashMap<String, Page<S>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Page<S>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Sets the version of the items the pages are cached for. All pages are
+	 * dropped if the version has changed.
+	 *
+	 * @param itemsVersion
+	 *            the items version of the state
+	 */
+	void setItemsVersion(final int itemsVersion) {
+		if (itemsVersion != this.itemsVersion) {
+			this.itemsVersion = itemsVersion;
+			this.pages.clear();
+		}
+	}
+
+	/**
+	 * Gets a page shown before.
+	 *
+	 * @param filter
+	 *            the filter
+	 * @param page
+	 *            the page number
+	 * @return the page or <code>null</code> if it is not cached
+	 */
+	Page<S> get(final String filter, final int page) {
+		return this.pages.get(getKey(filter, page));
+	}
+
+	/**
+	 * Caches a shown page.
+	 *
+	 * @param filter
+	 *            the filter
+	 * @param page
+	 *            the page number
+	 * @param suggestions
+	 *            the suggestions of the page, copied
+	 * @param totalSuggestions
+	 *            the number of suggestions of the filter
+	 */
+	void put(final String filter, final int page, final List<S> suggestions, final int totalSuggestions) {
+		this.pages.put(getKey(filter, page), new Page<>(suggestions, totalSuggestions));
+	}
+
+	/**
+	 * Drops all pages.
+	 */
+	void clear() {
+		this.pages.clear();
+	}
+
+	private static String getKey(final String filter, final int page) {
+		return page + ":" + filter;
+	}
+
+	/**
+	 * Suggestions of a page shown before. The checked state is taken from the
+	 * current selection when the page is shown again.
+	 *
+	 * @param <S>
+	 *            suggestion type
+	 */
+	static final class Page<S> {
+
+		private final List<S> suggestions;
+		private final int totalSuggestions;
+
+		Page(final List<S> suggestions, final int totalSuggestions) {
+			this.suggestions = new ArrayList<>(suggestions);
+			this.totalSuggestions = totalSuggestions;
+		}
+
+		List<S> getSuggestions() {
+			return this.suggestions;
+		}
+
+		int getTotalSuggestions() {
+			return this.totalSuggestions;
+		}
+	}
+}
@@ -21,7 +21,6 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -32,6 +31,7 @@ import com.google.gwt.aria.client.Property;
 import com.google.gwt.aria.client.Roles;
 import com.google.gwt.aria.client.State;
 import com.google.gwt.cell.client.IsCollapsible;
+import com.google.gwt.core.client.Duration;
 import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.core.client.Scheduler.ScheduledCommand;
 import com.google.gwt.dom.client.Document;
@@ -118,7 +118,7 @@ public class VComboBoxMultiselect extends Composite
 		private final String caption;
 		private String untranslatedIconUri;
 		private String style;
-		private final VCheckBox checkBox;
+		private boolean checked;
 		private Date lastExecution;
 
 		/**
@@ -139,10 +139,6 @@ public class VComboBoxMultiselect extends Composite
 			this.caption = caption;
 			this.style = style;
 			this.untranslatedIconUri = untranslatedIconUri;
-
-			this.checkBox = new VCheckBox();
-			this.checkBox.setEnabled(false);
-			State.HIDDEN.set(getCheckBoxElement(), true);
 		}
 
 		/**
@@ -269,26 +265,99 @@ public class VComboBoxMultiselect extends Composite
 	    return result;
 	}
 
+		/**
+		 * Gets the check box of the menu item showing this suggestion.
+		 *
+		 * @return the check box or <code>null</code> if the suggestion is not
+		 *         shown
+		 */
 		public VCheckBox getCheckBox() {
-			return this.checkBox;
-		}
-
-		Element getCheckBoxElement() {
-			return this.checkBox.getElement()
-				.getFirstChildElement();
+			MenuItem menuItem = VComboBoxMultiselect.this.suggestionPopup.getMenuItem(this);
+			return menuItem instanceof SuggestionMenuItem ? ((SuggestionMenuItem) menuItem).checkBox : null;
 		}
 
 		public boolean isChecked() {
-			return getCheckBox().getValue();
+			return this.checked;
 		}
 
 		public void setChecked(boolean checked) {
+			this.checked = checked;
+
 			MenuItem menuItem = VComboBoxMultiselect.this.suggestionPopup.getMenuItem(this);
-			if (menuItem != null) {
-				State.CHECKED.set(menuItem.getElement(), CheckedValue.of(checked));
+			if (menuItem instanceof SuggestionMenuItem) {
+				((SuggestionMenuItem) menuItem).setChecked(checked);
 			}
+		}
+	}
 
-			getCheckBox().setValue(checked);
+	/**
+	 * Menu item showing a suggestion. The items of a menu are reused for the
+	 * next suggestions, only the parts of the element that differ are
+	 * updated.
+	 */
+	private class SuggestionMenuItem extends MenuItem {
+
+		private final VCheckBox checkBox;
+		private String displayString;
+		private String style;
+		private boolean checked;
+
+		SuggestionMenuItem() {
+			super("", true, (Command) null);
+			Roles.getListitemRole()
+				.set(getElement());
+
+			this.checkBox = new VCheckBox();
+			this.checkBox.setEnabled(false);
+			State.HIDDEN.set(this.checkBox.getElement()
+				.getFirstChildElement(), true);
+			State.CHECKED.set(getElement(), CheckedValue.of(false));
+			getElement().insertFirst(this.checkBox.getElement());
+		}
+
+		/**
+		 * Shows a suggestion in this item.
+		 *
+		 * @param suggestion
+		 *            the suggestion
+		 * @param position
+		 *            the position of the suggestion in all suggestions,
+		 *            starting at 1
+		 */
+		void setSuggestion(ComboBoxMultiselectSuggestion suggestion, int position) {
+			setCommand(suggestion);
+
+			final String displayString = suggestion.getDisplayString();
+			if (!displayString.equals(this.displayString)) {
+				this.displayString = displayString;
+				setHTML(displayString);
+				getElement().insertFirst(this.checkBox.getElement());
+				WidgetUtil.sinkOnloadForImages(getElement());
+				Property.LABEL.set(getElement(), suggestion.getAriaLabel());
+			}
+
+			final String style = suggestion.getStyle();
+			if (!SharedUtil.equals(style, this.style)) {
+				if (this.style != null) {
+					removeStyleName("v-filterselect-item-" + this.style);
+				}
+				if (style != null) {
+					addStyleName("v-filterselect-item-" + style);
+				}
+				this.style = style;
+			}
+
+			setChecked(suggestion.isChecked());
+			Property.SETSIZE.set(getElement(), getTotalSuggestions());
+			Property.POSINSET.set(getElement(), position);
+		}
+
+		void setChecked(boolean checked) {
+			if (checked != this.checked) {
+				this.checked = checked;
+				this.checkBox.setValue(checked);
+				State.CHECKED.set(getElement(), CheckedValue.of(checked));
+			}
 		}
 	}
 
@@ -820,6 +889,10 @@ public class VComboBoxMultiselect extends Composite
 
 			}
 
+			if (event.getTypeInt() == Event.ONMOUSEDOWN) {
+				VComboBoxMultiselect.this.rangeSelection = event.getShiftKey();
+			}
+
 			/*
 			 * Prevent the keyboard focus from leaving the textfield by
 			 * preventing the default behaviour of the browser. Fixes #4285.
@@ -906,6 +979,8 @@ public class VComboBoxMultiselect extends Composite
 
 			// reset menu size and retrieve its "natural" size
 			this.menu.setHeight("");
+			// the rows outside the window can only be measured once shown
+			this.menu.updateWindowSpace(VComboBoxMultiselect.this.currentSuggestions.size());
 			if (VComboBoxMultiselect.this.currentPage > 0 && !hasNextPage()) {
 				// fix height to avoid height change when getting to last page
 				this.menu.fixHeightTo(VComboBoxMultiselect.this.pageLength);
@@ -1197,6 +1272,14 @@ public class VComboBoxMultiselect extends Composite
 			}
 		});
 
+		/**
+		 * Items showing the suggestions, reused when the suggestions change.
+		 */
+		private final List<SuggestionMenuItem> itemPool = new ArrayList<>();
+
+		private MenuItem clearMenuItem;
+		private MenuItem selectAllMenuItem;
+
 		/**
 		 * Default constructor
 		 */
@@ -1206,6 +1289,76 @@ public class VComboBoxMultiselect extends Composite
 			addDomHandler(this, LoadEvent.getType());
 
 			setScrollEnabled(true);
+			sinkEvents(Event.ONSCROLL);
+		}
+
+		@Override
+		public void onBrowserEvent(Event event) {
+			if (event.getTypeInt() == Event.ONSCROLL) {
+				onScroll();
+				return;
+			}
+			super.onBrowserEvent(event);
+		}
+
+		/*
+		 * Moves the window of rendered rows of a popup without paging when the
+		 * visible rows get close to its edges.
+		 */
+		private void onScroll() {
+			if (VComboBoxMultiselect.this.pageLength != 0) {
+				return;
+			}
+			final int itemHeight = getItemOffsetHeight();
+			if (itemHeight <= 0) {
+				return;
+			}
+
+			final int totalSuggestions = getTotalSuggestions();
+			final int windowStart = VComboBoxMultiselect.this.windowStart;
+			final int windowEnd = windowStart + VComboBoxMultiselect.this.currentSuggestions.size();
+			final int firstVisible = getElement().getScrollTop() / itemHeight;
+			final int visibleCount = getElement().getClientHeight() / itemHeight + 1;
+			final int margin = SCROLL_WINDOW_SIZE / 4;
+
+			if (windowStart > 0 && firstVisible < windowStart + margin
+					|| windowEnd < totalSuggestions && firstVisible + visibleCount > windowEnd - margin) {
+				final int newStart = Math.max(0, Math.min(totalSuggestions - SCROLL_WINDOW_SIZE,
+						firstVisible + (visibleCount - SCROLL_WINDOW_SIZE) / 2));
+				if (newStart != windowStart) {
+					VComboBoxMultiselect.this.connector.requestWindow(newStart);
+				}
+			}
+		}
+
+		/**
+		 * Renders the current suggestions of a popup without paging after its
+		 * window has moved, keeping the scroll position.
+		 */
+		public void updateWindow() {
+			final int scrollTop = getElement().getScrollTop();
+			setSuggestions(VComboBoxMultiselect.this.currentSuggestions);
+			getElement().setScrollTop(scrollTop);
+		}
+
+		/*
+		 * Replaces the rows before and after the rendered window by empty space,
+		 * so the scroll bar covers all suggestions.
+		 */
+		private void updateWindowSpace(int renderedCount) {
+			final Style style = getElement().getFirstChildElement()
+				.getStyle();
+			final int itemHeight = getItemOffsetHeight();
+			if (VComboBoxMultiselect.this.pageLength != 0 || itemHeight <= 0) {
+				style.clearMarginTop();
+				style.clearMarginBottom();
+				return;
+			}
+
+			final int windowStart = VComboBoxMultiselect.this.windowStart;
+			final int rowsAfter = Math.max(0, getTotalSuggestions() - windowStart - renderedCount);
+			style.setMarginTop(windowStart * itemHeight, Unit.PX);
+			style.setMarginBottom(rowsAfter * itemHeight, Unit.PX);
 		}
 
 		/**
@@ -1241,62 +1394,75 @@ public class VComboBoxMultiselect extends Composite
 		public void setSuggestions(Collection<ComboBoxMultiselectSuggestion> suggestions) {
 			debug("VComboBoxMultiselect.SM: setSuggestions(" + suggestions + ")");
 
-			clearItems();
-
+			final List<MenuItem> items = new ArrayList<>();
 			if (VComboBoxMultiselect.this.showClearButton) {
-				MenuItem clearMenuItem = new MenuItem(VComboBoxMultiselect.this.clearButtonCaption, false,
-						VComboBoxMultiselect.this.clearCmd);
-				clearMenuItem.getElement()
-					.setId(DOM.createUniqueId());
-				clearMenuItem.addStyleName("align-center");
-				Property.LABEL.set(clearMenuItem.getElement(), VComboBoxMultiselect.this.clearButtonCaption);
-				this.addItem(clearMenuItem);
+				if (this.clearMenuItem == null) {
+					this.clearMenuItem = createButtonItem(VComboBoxMultiselect.this.clearCmd);
+				}
+				setButtonCaption(this.clearMenuItem, VComboBoxMultiselect.this.clearButtonCaption);
+				items.add(this.clearMenuItem);
 			}
 
 			if (VComboBoxMultiselect.this.showSelectAllButton) {
-				MenuItem selectAllMenuItem = new MenuItem(VComboBoxMultiselect.this.selectAllButtonCaption, false,
-						VComboBoxMultiselect.this.selectAllCmd);
-				selectAllMenuItem.getElement()
-					.setId(DOM.createUniqueId());
-				selectAllMenuItem.addStyleName("align-center");
-				Property.LABEL.set(selectAllMenuItem.getElement(), VComboBoxMultiselect.this.selectAllButtonCaption);
-				this.addItem(selectAllMenuItem);
+				if (this.selectAllMenuItem == null) {
+					this.selectAllMenuItem = createButtonItem(VComboBoxMultiselect.this.selectAllCmd);
+				}
+				setButtonCaption(this.selectAllMenuItem, VComboBoxMultiselect.this.selectAllButtonCaption);
+				items.add(this.selectAllMenuItem);
 			}
 
-			final Iterator<ComboBoxMultiselectSuggestion> it = suggestions.iterator();
-			int currentSuggestionIndex = VComboBoxMultiselect.this.currentPage * VComboBoxMultiselect.this.pageLength;
-		
-			while (it.hasNext()) {
-				final ComboBoxMultiselectSuggestion suggestion = it.next();
-                		final MenuItem mi = new MenuItem(suggestion.getDisplayString(), true, suggestion);
+			int currentSuggestionIndex = getFirstShownRow();
+			int poolIndex = 0;
+			for (ComboBoxMultiselectSuggestion suggestion : suggestions) {
+				boolean isSelected = VComboBoxMultiselect.this.selectedOptionKeys != null
+						&& VComboBoxMultiselect.this.selectedOptionKeys.contains(suggestion.getOptionKey());
+				suggestion.checked = isSelected;
 
-				String style = suggestion.getStyle();
-				if (style != null) {
-					mi.addStyleName("v-filterselect-item-" + style);
+				if (poolIndex == this.itemPool.size()) {
+					this.itemPool.add(new SuggestionMenuItem());
 				}
-				Roles.getListitemRole()
-					.set(mi.getElement());
+				final SuggestionMenuItem mi = this.itemPool.get(poolIndex++);
+				mi.setSuggestion(suggestion, ++currentSuggestionIndex);
+				items.add(mi);
+			}
 
-				WidgetUtil.sinkOnloadForImages(mi.getElement());
+			setItems(items);
 
-				boolean isSelected = VComboBoxMultiselect.this.selectedOptionKeys != null
-						&& VComboBoxMultiselect.this.selectedOptionKeys.contains(suggestion.getOptionKey());
-				
-				suggestion.setChecked(isSelected);
-				mi.getElement()
-					.insertFirst(suggestion.getCheckBox()
-						.getElement());
+			updateWindowSpace(suggestions.size());
+			VComboBoxMultiselect.this.suggestionPopup.selectFirstItem();
+		}
 
-				Property.LABEL.set(mi.getElement(), suggestion.getAriaLabel());
-				Property.SETSIZE.set(mi.getElement(), getTotalSuggestions());
-				Property.POSINSET.set(mi.getElement(), ++currentSuggestionIndex);
-				State.CHECKED.set(mi.getElement(), CheckedValue.of(isSelected));
+		private MenuItem createButtonItem(Command command) {
+			MenuItem menuItem = new MenuItem("", false, command);
+			menuItem.getElement()
+				.setId(DOM.createUniqueId());
+			menuItem.addStyleName("align-center");
+			return menuItem;
+		}
 
-				this.addItem(mi);
-				
+		private void setButtonCaption(MenuItem menuItem, String caption) {
+			if (!caption.equals(menuItem.getText())) {
+				menuItem.setText(caption);
+				Property.LABEL.set(menuItem.getElement(), caption);
+			}
+		}
+
+		/*
+		 * Replaces the shown items, the rows of the items that are shown in the
+		 * same place already are kept.
+		 */
+		private void setItems(List<MenuItem> newItems) {
+			final List<MenuItem> items = getItems();
+			int kept = 0;
+			while (kept < items.size() && kept < newItems.size() && items.get(kept) == newItems.get(kept)) {
+				kept++;
+			}
+			while (items.size() > kept) {
+				removeItem(items.get(items.size() - 1));
+			}
+			for (int i = kept; i < newItems.size(); i++) {
+				addItem(newItems.get(i));
 			}
-			
-			VComboBoxMultiselect.this.suggestionPopup.selectFirstItem();
 		}
 
 		/**
@@ -1713,6 +1879,8 @@ public class VComboBoxMultiselect extends Composite
 			this.popupOpenerClicked = false;
 			VComboBoxMultiselect.this.lastNewItemString = null;
 
+			filterResponseReceived();
+
 			// if (!initDone) {
 			// debug("VComboBoxMultiselect: init done, updating widths");
 			// // Calculate minimum textarea width
@@ -1756,27 +1924,20 @@ public class VComboBoxMultiselect extends Composite
 		 * ones (different from the previous list) were received from the
 		 * server.
 		 *
-		 * @param selectedKeys
-		 *            new selected keys or null if none given by the server
+		 * The selected keys have already been updated in
+		 * {@link VComboBoxMultiselect#serverSelectedKeys} by the connector.
+		 *
 		 * @param selectedCaption
 		 *            new selected item caption if sent by the server or null -
 		 *            this is used when the selected item is not on the current
 		 *            page
 		 */
-		public void updateSelectionFromServer(Set<String> selectedKeys, String selectedCaption) {
+		public void updateSelectionFromServer(String selectedCaption) {
 			boolean oldSuggestionTextMatchTheOldSelection = VComboBoxMultiselect.this.currentSuggestion != null
 					&& VComboBoxMultiselect.this.currentSuggestion.getReplacementString()
 						.equals(VComboBoxMultiselect.this.tb.getText());
 
-			// VComboBoxMultiselect.this.serverSelectedKeys = selectedKeys;
-			VComboBoxMultiselect.this.serverSelectedKeys.clear();
-			if (selectedKeys != null) {
-				for (String selectedKey : selectedKeys) {
-					VComboBoxMultiselect.this.serverSelectedKeys.add(selectedKey);
-				}
-			}
-
-			performSelection(	selectedKeys, oldSuggestionTextMatchTheOldSelection,
+			performSelection(	VComboBoxMultiselect.this.serverSelectedKeys, oldSuggestionTextMatchTheOldSelection,
 								!isWaitingForFilteringResponse() || this.popupOpenerClicked);
 
 			cancelPendingPostFiltering();
@@ -1873,6 +2034,21 @@ public class VComboBoxMultiselect extends Composite
 	/** For internal use only. May be removed or replaced in the future. */
 	public int currentPage;
 
+	/**
+	 * Number of rows rendered at once when the popup is not paged.
+	 * <p>
+	 * For internal use only. May be removed or replaced in the future.
+	 */
+	public static final int SCROLL_WINDOW_SIZE = 100;
+
+	/**
+	 * Index of the first rendered row when the popup is not paged, the rows
+	 * before and after the window are replaced by empty space.
+	 * <p>
+	 * For internal use only. May be removed or replaced in the future.
+	 */
+	public int windowStart;
+
 	/**
 	 * A collection of available suggestions (options) as received from the
 	 * server.
@@ -1881,11 +2057,73 @@ public class VComboBoxMultiselect extends Composite
 	 */
 	public final List<ComboBoxMultiselectSuggestion> currentSuggestions = new ArrayList<>();
 
-	/** For internal use only. May be removed or replaced in the future. */
-	public Set<String> serverSelectedKeys = new LinkedHashSet<>();
+	/**
+	 * The selected item keys as known by the server, only changed by the
+	 * connector.
+	 * <p>
+	 * For internal use only. May be removed or replaced in the future.
+	 */
+	public final Set<String> serverSelectedKeys = new LinkedHashSet<>();
+
+	/**
+	 * The keys of the received items selected by a select all with a filter.
+	 * The server marks these items in their rows instead of sending their
+	 * keys.
+	 * <p>
+	 * For internal use only. May be removed or replaced in the future.
+	 */
+	public final Set<String> filterSelectedKeys = new HashSet<>();
 	/** For internal use only. May be removed or replaced in the future. */
 	public Set<String> selectedOptionKeys = new LinkedHashSet<>();
 
+	/**
+	 * Whether the next selected suggestion extends the selection from the
+	 * anchor row, set while the shift key is held.
+	 */
+	private boolean rangeSelection = false;
+
+	/**
+	 * The row of the last selected suggestion within the current filter and
+	 * data version, -1 if none.
+	 */
+	private int selectionAnchorRow = -1;
+	private String selectionAnchorFilter;
+	private int selectionAnchorDataVersion;
+
+	/** For internal use only. May be removed or replaced in the future. */
+	public int filterDebounceDelay;
+
+	/**
+	 * Sends the filter typed by the user after the debounce delay.
+	 */
+	private final Timer filterTimer = new Timer() {
+
+		@Override
+		public void run() {
+			filterOptions(0);
+		}
+	};
+
+	/**
+	 * Start time of the filter request waiting for the server, -1 if none.
+	 */
+	private double filterRequestStart = -1;
+	private int filterRequestId;
+
+	/**
+	 * Smoothed round trip time of the filter requests in milliseconds, -1 if
+	 * not measured yet.
+	 */
+	private double filterRoundTrip = -1;
+
+	/**
+	 * The latest filter typed while a filter request was waiting for the
+	 * server, null if none.
+	 */
+	private String queuedFilter;
+	private int queuedFilterPage;
+	private boolean queuedFilterOpensPopup;
+
 	/** For internal use only. May be removed or replaced in the future. */
 	public boolean initDone = false;
 
@@ -1919,6 +2157,8 @@ public class VComboBoxMultiselect extends Composite
 	/** For internal use only. May be removed or replaced in the future. */
 	public int suggestionPopupMinWidth = 0;
 
+	private final CaptionWidthCache captionWidthCache = new CaptionWidthCache();
+
 	public String suggestionPopupWidth = null;
 
 	private int popupWidth = -1;
@@ -2075,6 +2315,17 @@ public class VComboBoxMultiselect extends Composite
 	public void filterOptions(int page, String filter) {
 		debug("VComboBoxMultiselect: filterOptions(" + page + ", " + filter + ")");
 
+		this.filterTimer.cancel();
+
+		if (!filter.equals(this.lastFilter) && this.filterRequestStart >= 0) {
+			// only the latest filter is sent when the server has answered
+			this.queuedFilter = filter;
+			this.queuedFilterPage = page;
+			this.queuedFilterOpensPopup = this.dataReceivedHandler.popupOpenerClicked;
+			return;
+		}
+		this.queuedFilter = null;
+
 		if (filter.equals(this.lastFilter) && this.currentPage == page && this.suggestionPopup.isAttached()) {
 			// already have the page
 			this.dataReceivedHandler.dataReceived();
@@ -2093,9 +2344,18 @@ public class VComboBoxMultiselect extends Composite
 			}
 		}
 
+		boolean filterRequested = !filter.equals(this.lastFilter) && !this.connector.getState().clientSideFiltering;
+		if (filterRequested) {
+			this.filterRequestStart = Duration.currentTimeMillis();
+		}
+
 		this.dataReceivedHandler.startWaitingForFilteringResponse();
 		this.connector.requestPage(page, filter);
 
+		if (filterRequested) {
+			this.filterRequestId = this.connector.getFilterRequestId();
+		}
+
 		this.lastFilter = filter;
 
 		// If the data was updated from cache, the page has been updated too, if
@@ -2105,6 +2365,59 @@ public class VComboBoxMultiselect extends Composite
 		}
 	}
 
+	/**
+	 * Filters the options with the text box input after the debounce delay. The
+	 * delay is shortened to the measured round trip time of the filter
+	 * requests, so fast connections do not wait longer than necessary.
+	 */
+	private void scheduleFilterOptions() {
+		int delay = this.connector.getState().clientSideFiltering ? 0 : this.filterDebounceDelay;
+		if (this.filterRoundTrip >= 0) {
+			delay = Math.min(delay, (int) this.filterRoundTrip);
+		}
+
+		if (delay <= 0) {
+			filterOptions(0);
+		} else {
+			this.filterTimer.schedule(delay);
+		}
+	}
+
+	/**
+	 * For internal use only. May be removed or replaced in the future.
+	 *
+	 * @return true if a changed filter has been sent and the server has not
+	 *         answered yet
+	 */
+	public boolean isFilterRequestPending() {
+		return this.filterRequestStart >= 0;
+	}
+
+	/*
+	 * Measures the round trip time and sends the queued filter once the server
+	 * has answered the filter request.
+	 */
+	private void filterResponseReceived() {
+		// other changes of the rows, e.g. pushed by the server, do not answer
+		// the request, later requests do
+		if (this.filterRequestStart < 0 || this.connector.getState().filterRequestId - this.filterRequestId < 0) {
+			return;
+		}
+
+		double roundTrip = Duration.currentTimeMillis() - this.filterRequestStart;
+		this.filterRoundTrip = this.filterRoundTrip < 0 ? roundTrip : 0.7 * this.filterRoundTrip + 0.3 * roundTrip;
+		this.filterRequestStart = -1;
+
+		if (this.queuedFilter != null) {
+			String filter = this.queuedFilter;
+			this.queuedFilter = null;
+			if (this.queuedFilterOpensPopup) {
+				this.dataReceivedHandler.popupOpenerClicked();
+			}
+			filterOptions(this.queuedFilterPage, filter);
+		}
+	}
+
 	/** For internal use only. May be removed or replaced in the future. */
 	public void updateReadOnly() {
 		debug("VComboBoxMultiselect: updateReadOnly()");
@@ -2184,16 +2497,95 @@ public class VComboBoxMultiselect extends Composite
 
 		this.dataReceivedHandler.cancelPendingPostFiltering();
 
+		if (this.connector.deferSuggestionSelection(suggestion)) {
+			// selected when the rows of the cached page have been fetched again
+			return;
+		}
+
 		this.currentSuggestion = suggestion;
 		String newKey = suggestion.getOptionKey();
-		
-		if (!this.selectedOptionKeys.contains(newKey)) {
+
+		boolean range = this.rangeSelection;
+		this.rangeSelection = false;
+
+		int row = getFirstShownRow() + this.currentSuggestions.indexOf(suggestion);
+		int dataVersion = this.connector.getState().dataVersion;
+		if (range && this.selectionAnchorRow >= 0 && this.selectionAnchorRow != row
+				&& this.lastFilter.equals(this.selectionAnchorFilter)
+				&& this.selectionAnchorDataVersion == dataVersion) {
+			selectRange(Math.min(this.selectionAnchorRow, row), Math.abs(this.selectionAnchorRow - row) + 1,
+						!this.selectedOptionKeys.contains(newKey));
+		} else if (!this.selectedOptionKeys.contains(newKey)) {
 			this.selectedOptionKeys.add(newKey);
 			this.connector.sendSelections(new HashSet<>(Arrays.asList(newKey)), new HashSet<>());
 		} else {
 			this.selectedOptionKeys.remove(newKey);
+			this.filterSelectedKeys.remove(newKey);
 			this.connector.sendSelections(new HashSet<>(), new HashSet<>(Arrays.asList(newKey)));
 		}
+		updateCheckedSuggestions();
+
+		this.selectionAnchorRow = row;
+		this.selectionAnchorFilter = this.lastFilter;
+		this.selectionAnchorDataVersion = dataVersion;
+	}
+
+	/*
+	 * Gets the row of the first current suggestion in all suggestions of the
+	 * current filter.
+	 */
+	private int getFirstShownRow() {
+		return this.pageLength > 0 ? this.currentPage * this.pageLength : this.windowStart;
+	}
+
+	/**
+	 * Selects or deselects a range of rows of the current filter. Only the
+	 * range is sent, the server resolves the rows and sends back the changed
+	 * keys.
+	 *
+	 * @param start
+	 *            the first row
+	 * @param length
+	 *            the number of rows
+	 * @param selected
+	 *            true to select the rows, false to deselect them
+	 */
+	private void selectRange(int start, int length, boolean selected) {
+		debug("VComboBoxMultiselect: selectRange(" + start + ", " + length + ", " + selected + ")");
+
+		// update the shown suggestions right away
+		int pageStart = getFirstShownRow();
+		for (int i = 0; i < this.currentSuggestions.size(); i++) {
+			if (pageStart + i >= start && pageStart + i < start + length) {
+				String key = this.currentSuggestions.get(i)
+					.getOptionKey();
+				if (selected) {
+					this.selectedOptionKeys.add(key);
+				} else {
+					this.selectedOptionKeys.remove(key);
+					this.filterSelectedKeys.remove(key);
+				}
+			}
+		}
+		updateCheckedSuggestions();
+
+		// the server does not know the filter of the browser
+		List<String> keys = this.connector.getClientFilteredKeys(start, length);
+		if (keys != null) {
+			Set<String> changedKeys = new HashSet<>(keys);
+			if (selected) {
+				this.selectedOptionKeys.addAll(changedKeys);
+			} else {
+				this.selectedOptionKeys.removeAll(changedKeys);
+				this.filterSelectedKeys.removeAll(changedKeys);
+			}
+			this.connector.sendSelections(selected ? changedKeys : new HashSet<>(), selected ? new HashSet<>() : changedKeys);
+			return;
+		}
+
+		int[] ranges = new int[] { start, length };
+		int[] noRanges = new int[0];
+		this.connector.sendSelectionRanges(selected ? ranges : noRanges, selected ? noRanges : ranges);
 	}
 
 	/**
@@ -2210,7 +2602,11 @@ public class VComboBoxMultiselect extends Composite
 	 */
 	private void performSelection(Set<String> selectedKeys, boolean forceUpdateText,
 			boolean updatePromptAndSelectionIfMatchFound) {
-		this.selectedOptionKeys = selectedKeys;
+		// copied, the server keys are only changed by the server
+		this.selectedOptionKeys = selectedKeys == null ? null : new LinkedHashSet<>(selectedKeys);
+		if (this.selectedOptionKeys != null) {
+			this.selectedOptionKeys.addAll(this.filterSelectedKeys);
+		}
 
 		// some item selected
 		for (ComboBoxMultiselectSuggestion suggestion : this.currentSuggestions) {
@@ -2226,6 +2622,22 @@ public class VComboBoxMultiselect extends Composite
 				this.selectedOptionKeys.add(suggestionKey);
 			}
 		}
+		updateCheckedSuggestions();
+	}
+
+	/*
+	 * Updates the check boxes of the shown suggestions from the selected keys,
+	 * the rows are not sent again when the selection changes.
+	 */
+	private void updateCheckedSuggestions() {
+		for (MenuItem menuItem : this.suggestionPopup.menu.getItems()) {
+			if (menuItem instanceof SuggestionMenuItem) {
+				ComboBoxMultiselectSuggestion suggestion = (ComboBoxMultiselectSuggestion) menuItem.getCommand();
+				suggestion.checked = this.selectedOptionKeys != null
+						&& this.selectedOptionKeys.contains(suggestion.getOptionKey());
+				((SuggestionMenuItem) menuItem).setChecked(suggestion.checked);
+			}
+		}
 	}
 
 	private void forceReflow() {
@@ -2317,6 +2729,7 @@ public class VComboBoxMultiselect extends Composite
 		case KeyCodes.KEY_PAGEDOWN:
 		case KeyCodes.KEY_PAGEUP:
 			// open popup as from gadget
+			this.connector.sendPopupOpened();
 			filterOptions(-1, "");
 			this.tb.selectAll();
 			this.dataReceivedHandler.popupOpenerClicked();
@@ -2384,6 +2797,7 @@ public class VComboBoxMultiselect extends Composite
 			break;
 		case KeyCodes.KEY_TAB:
 		case KeyCodes.KEY_ENTER:
+			this.rangeSelection = event.isShiftKeyDown();
 
 			// queue this, may be cancelled by selection
 			int selectedIndex = this.suggestionPopup.menu.getSelectedIndex();
@@ -2467,7 +2881,7 @@ public class VComboBoxMultiselect extends Composite
 				if (this.textInputEnabled) {
 					// when filtering, we always want to see the results on the
 					// first page first.
-					filterOptions(0);
+					scheduleFilterOptions();
 				}
 				break;
 			}
@@ -2483,8 +2897,9 @@ public class VComboBoxMultiselect extends Composite
 		// just fetch selected information from state
 		String text = this.connector.getState().selectedItemsCaption;
 		setText(text == null ? "" : text);
-		this.selectedOptionKeys = this.connector.getState().selectedItemKeys;
-		if (this.selectedOptionKeys == null || this.selectedOptionKeys.isEmpty()) {
+		this.selectedOptionKeys = new LinkedHashSet<>(this.serverSelectedKeys);
+		this.selectedOptionKeys.addAll(this.filterSelectedKeys);
+		if (this.selectedOptionKeys.isEmpty()) {
 			this.selectedOptionKeys = null;
 			updatePlaceholder();
 		}
@@ -2511,6 +2926,7 @@ public class VComboBoxMultiselect extends Composite
 			// ask suggestionPopup if it was just closed, we are using GWT
 			// Popup's auto close feature
 			if (!this.suggestionPopup.isJustClosed()) {
+				this.connector.sendPopupOpened();
 				filterOptions(-1, "");
 				this.dataReceivedHandler.popupOpenerClicked();
 			}
@@ -2529,20 +2945,31 @@ public class VComboBoxMultiselect extends Composite
 	public void updateSuggestionPopupMinWidth() {
 		debug("VComboBoxMultiselect: updateSuggestionPopupMinWidth()");
 
+		if (this.captionWidthCache.isSupported()) {
+			// measured without adding the captions to the document
+			this.captionWidthCache.setFont(this.tb.getElement());
+			int width = this.inputPrompt != null ? this.captionWidthCache.getWidth(this.inputPrompt) : 0;
+			for (ComboBoxMultiselectSuggestion suggestion : this.currentSuggestions) {
+				width = Math.max(width, this.captionWidthCache.getWidth(suggestion.getReplacementString()));
+			}
+			this.suggestionPopupMinWidth = width;
+			return;
+		}
+
 		// used only to calculate minimum width
-		String captions = WidgetUtil.escapeHTML(this.inputPrompt);
+		final StringBuilder captions = new StringBuilder(WidgetUtil.escapeHTML(this.inputPrompt));
 
 		for (ComboBoxMultiselectSuggestion suggestion : this.currentSuggestions) {
 			// Collect captions so we can calculate minimum width for
 			// textarea
 			if (captions.length() > 0) {
-				captions += "|";
+				captions.append('|');
 			}
-			captions += WidgetUtil.escapeHTML(suggestion.getReplacementString());
+			captions.append(WidgetUtil.escapeHTML(suggestion.getReplacementString()));
 		}
 
 		// Calculate minimum textarea width
-		this.suggestionPopupMinWidth = minWidth(captions);
+		this.suggestionPopupMinWidth = minWidth(captions.toString());
 	}
 
 	/**
@@ -2665,6 +3092,11 @@ public class VComboBoxMultiselect extends Composite
 		updatePlaceholder();
 		removeStyleDependentName("focus");
 
+		// the filter is reset on the server
+		this.filterTimer.cancel();
+		this.queuedFilter = null;
+		this.filterRequestStart = -1;
+
 		// Send new items when clicking out with the mouse.
 		if (!this.readonly) {
 			if (this.textInputEnabled && this.allowNewItems && (this.currentSuggestion == null || this.tb.getText()
@@ -2930,6 +3362,17 @@ public class VComboBoxMultiselect extends Composite
 		this.pageLength = pageLength;
 	}
 
+	/**
+	 * Sets the maximum time to wait after the last key stroke before sending
+	 * the filter.
+	 *
+	 * @param filterDebounceDelay
+	 *            the delay in milliseconds or 0 to send the filter immediately
+	 */
+	public void setFilterDebounceDelay(int filterDebounceDelay) {
+		this.filterDebounceDelay = filterDebounceDelay;
+	}
+
 	/**
 	 * Sets the caption of the clear button.
 	 *
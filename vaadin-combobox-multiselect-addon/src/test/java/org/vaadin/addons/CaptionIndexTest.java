@@ -0,0 +1,135 @@
+package org.vaadin.addons;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vaadin.data.provider.Query;
+
+public class CaptionIndexTest {
+
+	private final List<String> items = Arrays.asList("Apple", "Pineapple", "Banana", "Apricot", "Grape", "ap");
+
+	private final CaptionIndex<String> index = new CaptionIndex<>(this.items, item -> item, Locale.ENGLISH);
+
+	@Test
+	public void findsSubstringsIgnoringCase() {
+		Assert.assertArrayEquals(new int[] { 0, 1 }, this.index.find("APPL"));
+		Assert.assertArrayEquals(new int[] { 2 }, this.index.find("nan"));
+	}
+
+	@Test
+	public void findsShortFiltersWithoutTrigrams() {
+		Assert.assertArrayEquals(new int[] { 0, 1, 3, 4, 5 }, this.index.find("ap"));
+	}
+
+	@Test
+	public void findsNothingForUnknownTrigram() {
+		Assert.assertArrayEquals(new int[0], this.index.find("xyz"));
+	}
+
+	@Test
+	public void emptyFilterFindsAll() {
+		Assert.assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5 }, this.index.find(""));
+	}
+
+	@Test
+	public void filterMatchesItems() {
+		final CaptionIndex.Filter<String> filter = new CaptionIndex.Filter<>(() -> this.index, "rap", CaptionIndex.MatchMode.INDEXED_SUBSTRING, null);
+		Assert.assertTrue(filter.test("Grape"));
+		Assert.assertFalse(filter.test("Apple"));
+		Assert.assertTrue(filter.test("Scrap"));
+	}
+
+	@Test
+	public void findsWordPrefixesInAnyOrder() {
+		final CaptionIndex<String> words = new CaptionIndex<>(Arrays.asList("Shirt, blue XL", "Blueshirt", "blue shirt S", "Jeans blue"), item -> item,
+				Locale.ENGLISH);
+		Assert.assertArrayEquals(new int[] { 0, 2 }, words.findWordPrefixes("shi BLUE"));
+		Assert.assertArrayEquals(new int[] { 0 }, words.findWordPrefixes("blue shirt xl"));
+		Assert.assertArrayEquals(new int[] { 0, 1, 2, 3 }, words.findWordPrefixes("bl"));
+		Assert.assertArrayEquals(new int[0], words.findWordPrefixes("hirt"));
+		Assert.assertTrue(words.containsWordPrefixes("Blue jeans", "je bl"));
+	}
+
+	@Test
+	public void narrowsRecentResults() {
+		final CaptionIndex.RecentResults recentResults = new CaptionIndex.RecentResults();
+		Assert.assertArrayEquals(new int[] { 0, 1, 3, 4, 5 }, recentResults.find(this.index, CaptionIndex.MatchMode.SUBSTRING, "ap"));
+		Assert.assertArrayEquals(new int[] { 0, 1 }, recentResults.find(this.index, CaptionIndex.MatchMode.SUBSTRING, "app"));
+		Assert.assertArrayEquals(new int[] { 4 }, recentResults.find(this.index, CaptionIndex.MatchMode.SUBSTRING, "rap"));
+		Assert.assertArrayEquals(new int[] { 2 }, recentResults.find(this.index, CaptionIndex.MatchMode.SUBSTRING, "ban"));
+	}
+
+	@Test
+	public void ordersSelectedFirstByCaption() {
+		final Set<String> selection = new HashSet<>(Arrays.asList("Grape", "Apricot"));
+		final SelectedFirstComparator<String> comparator = new SelectedFirstComparator<>(() -> this.index, () -> selection, () -> item -> item);
+
+		// ap, Apple, Apricot, Banana, Grape, Pineapple
+		Assert.assertArrayEquals(new int[] { 5, 0, 3, 2, 4, 1 }, this.index.getRankOrder());
+		Assert.assertArrayEquals(new int[] { 3, 4, 5, 0, 2, 1 }, comparator.order(this.index, null).toArray());
+		Assert.assertArrayEquals(new int[] { 4, 0, 1 }, comparator.order(this.index, new int[] { 0, 1, 4 }).toArray());
+		Assert.assertTrue(comparator.compare("Grape", "Apple") < 0);
+		Assert.assertTrue(comparator.compare("Apple", "Banana") < 0);
+	}
+
+	@Test
+	public void ordersEqualCaptionsConsistently() {
+		final CaptionIndex<String> equalCaptions = new CaptionIndex<>(Arrays.asList("b", "A", "a"), item -> item, Locale.ENGLISH);
+		Assert.assertEquals(equalCaptions.getRank("A"), equalCaptions.getRank("a"));
+
+		// "A" is not indexed, it has to compare like the indexed item with the same caption
+		final CaptionIndex<String> partial = new CaptionIndex<>(Arrays.asList("b", "a"), item -> item, Locale.ENGLISH);
+		final SelectedFirstComparator<String> comparator = new SelectedFirstComparator<>(() -> partial, HashSet::new, () -> item -> item);
+		Assert.assertEquals(0, comparator.compare("A", "a"));
+		Assert.assertEquals(0, comparator.compare("a", "A"));
+		Assert.assertTrue(comparator.compare("A", "b") < 0);
+		Assert.assertTrue(comparator.compare("B", "a") > 0);
+	}
+
+	@Test
+	public void comparesCaptionsWithoutIndex() {
+		final SelectedFirstComparator<String> comparator = new SelectedFirstComparator<>(() -> null, () -> new HashSet<>(Arrays.asList("b")),
+				() -> item -> item);
+		Assert.assertTrue(comparator.compare("b", "A") < 0);
+		Assert.assertTrue(comparator.compare("a", "C") < 0);
+		Assert.assertEquals(0, comparator.compare("a", "A"));
+	}
+
+	@Test
+	public void generatesCaptionsOncePerSortWithoutIndex() {
+		final AtomicInteger calls = new AtomicInteger();
+		final IndexedListDataProvider<String> dataProvider = new IndexedListDataProvider<>(this.items);
+		dataProvider.setSortComparator(new SelectedFirstComparator<>(() -> null, () -> new HashSet<>(Arrays.asList("Grape")), () -> item -> {
+			calls.incrementAndGet();
+			return item;
+		}));
+
+		Assert.assertEquals(Arrays.asList("Grape", "ap", "Apple", "Apricot", "Banana", "Pineapple"), dataProvider.fetch(new Query<>())
+				.collect(Collectors.toList()));
+		Assert.assertEquals(this.items.size(), calls.get());
+	}
+
+	@Test
+	public void movesChangedItemsWithinOrder() {
+		final Set<String> selection = new HashSet<>(Arrays.asList("Grape", "Apricot"));
+		final AtomicReference<Set<String>> current = new AtomicReference<>(selection);
+		final SelectedFirstComparator<String> comparator = new SelectedFirstComparator<>(() -> this.index, current::get, () -> item -> item);
+		Assert.assertArrayEquals(new int[] { 3, 4, 5, 0, 2, 1 }, comparator.order(this.index, null).toArray());
+
+		final Set<String> changed = new HashSet<>(Arrays.asList("Grape", "ap", "Pineapple"));
+		comparator.moveSelected(selection, changed, Arrays.asList("ap", "Pineapple"), Arrays.asList("Apricot"));
+		current.set(changed);
+		// ap, Grape, Pineapple, then Apple, Apricot, Banana
+		Assert.assertArrayEquals(new int[] { 5, 4, 1, 0, 3, 2 }, comparator.order(this.index, null).toArray());
+	}
+}
@@ -0,0 +1,274 @@
+package org.vaadin.addons;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.vaadin.addons.client.ComboBoxMultiselectServerRpc;
+
+import com.vaadin.data.provider.CallbackDataProvider;
+import com.vaadin.data.provider.Query;
+import com.vaadin.server.SerializableFunction;
+import com.vaadin.ui.ItemCaptionGenerator;
+
+public class ComboBoxMultiselectTest {
+
+	/**
+	 * Gives access to the state and the server RPC.
+	 */
+	private static class TestComboBox<T> extends ComboBoxMultiselect<T> {
+
+		private static final long serialVersionUID = 1L;
+
+		TestComboBox(final T... items) {
+			super("caption", Arrays.asList(items));
+		}
+
+		String getSelectedItemsCaption() {
+			return getState(false).selectedItemsCaption;
+		}
+
+		int getItemsVersion() {
+			return getState(false).itemsVersion;
+		}
+
+		int getDataVersion() {
+			return getState(false).dataVersion;
+		}
+
+		ComboBoxMultiselectServerRpc getRpc() {
+			try {
+				final Field rpc = ComboBoxMultiselect.class.getDeclaredField("rpc");
+				rpc.setAccessible(true);
+				return (ComboBoxMultiselectServerRpc) rpc.get(this);
+			}
+			catch (final ReflectiveOperationException e) {
+				throw new AssertionError(e);
+			}
+		}
+	}
+
+	/**
+	 * Backend data provider filtering by substring, which fails for queries outside of its size like a database query would.
+	 */
+	private static CallbackDataProvider<String, String> callbackProvider(final String... items) {
+		final SerializableFunction<Query<String, String>, List<String>> matches = query -> Stream.of(items)
+				.filter(item -> item.contains(query.getFilter()
+						.orElse("")))
+				.collect(Collectors.toList());
+		return new CallbackDataProvider<>(query -> {
+			final List<String> matching = matches.apply(query);
+			if (query.getOffset() + query.getLimit() > matching.size()) {
+				throw new IllegalArgumentException("query outside of the size");
+			}
+			return matching.subList(query.getOffset(), query.getOffset() + query.getLimit())
+					.stream();
+		}, query -> matches.apply(query)
+				.size());
+	}
+
+	@Test
+	public void returnsTheItemCaptionGeneratorWithCacheEnabled() {
+		final AtomicInteger calls = new AtomicInteger();
+		final ItemCaptionGenerator<String> captionGenerator = item -> {
+			calls.incrementAndGet();
+			return item.toUpperCase();
+		};
+
+		final ComboBoxMultiselect<String> comboBox = new ComboBoxMultiselect<>("caption", Arrays.asList("a", "b"));
+		comboBox.setCaptionCacheSize(10);
+		comboBox.setItemCaptionGenerator(captionGenerator);
+		Assert.assertSame(captionGenerator, comboBox.getItemCaptionGenerator());
+
+		// setting the returned generator again must not wrap the cache into another cache
+		comboBox.setItemCaptionGenerator(comboBox.getItemCaptionGenerator());
+		Assert.assertSame(captionGenerator, comboBox.getItemCaptionGenerator());
+
+		comboBox.getCaptionCache()
+				.apply("a");
+		comboBox.getCaptionCache()
+				.apply("a");
+		Assert.assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void sortsBySelectionOnlyWhenPopupIsOpened() {
+		final TestComboBox<String> comboBox = new TestComboBox<>("a", "b", "c");
+		final int dataVersion = comboBox.getDataVersion();
+
+		comboBox.select("b");
+		comboBox.deselect("b");
+		comboBox.setValue(new HashSet<>(Arrays.asList("a", "c")));
+		comboBox.deselectAll();
+		comboBox.select("c");
+		Assert.assertEquals(dataVersion, comboBox.getDataVersion());
+
+		comboBox.getRpc()
+				.popupOpened();
+		Assert.assertTrue(dataVersion != comboBox.getDataVersion());
+
+		// not sorted again if the selection has not changed
+		final int sortedDataVersion = comboBox.getDataVersion();
+		comboBox.getRpc()
+				.popupOpened();
+		comboBox.getRpc()
+				.blur();
+		Assert.assertEquals(sortedDataVersion, comboBox.getDataVersion());
+	}
+
+	@Test
+	public void selectsAllMatchingItemsByFilter() {
+		final TestComboBox<String> comboBox = new TestComboBox<>("apple", "apricot", "banana", "cherry");
+		comboBox.setFilterSelectionEnabled(true);
+		comboBox.select("cherry");
+		comboBox.select("apple");
+
+		comboBox.getRpc()
+				.selectAll("ap");
+		Assert.assertEquals(3, comboBox.getSelectedItems()
+				.size());
+		Assert.assertTrue(comboBox.isSelected("apricot"));
+
+		comboBox.deselect("apple");
+		Assert.assertEquals(new HashSet<>(Arrays.asList("apricot", "cherry")), new HashSet<>(comboBox.getSelectedItems()));
+		Assert.assertEquals(2, comboBox.getSelectedItems()
+				.size());
+
+		comboBox.getRpc()
+				.clear("");
+		Assert.assertTrue(comboBox.getSelectedItems()
+				.isEmpty());
+	}
+
+	@Test
+	public void dropsFilterSelectionForBackendDataProviders() {
+		final TestComboBox<String> comboBox = new TestComboBox<>("apple", "apricot", "banana");
+		comboBox.setFilterSelectionEnabled(true);
+		comboBox.select("banana");
+		comboBox.getRpc()
+				.selectAll("ap");
+
+		comboBox.setDataProvider(callbackProvider("apple", "apricot", "banana"));
+		Assert.assertFalse(comboBox.isSelected("apricot"));
+		Assert.assertEquals(Collections.emptySet(), comboBox.getSelectedItems());
+	}
+
+	@Test
+	public void captionsFilterSelectionAfterExplicitItems() {
+		final TestComboBox<String> comboBox = new TestComboBox<>("apple", "apricot", "banana", "cherry");
+		comboBox.setFilterSelectionEnabled(true);
+		comboBox.setSelectionCaptionGenerator((count, captions) -> count + ":" + String.join(",", captions));
+		comboBox.select("cherry");
+		Assert.assertEquals("1:cherry", comboBox.getSelectedItemsCaption());
+
+		comboBox.getRpc()
+				.selectAll("ap");
+		Assert.assertEquals("3:cherry,apple,apricot", comboBox.getSelectedItemsCaption());
+
+		comboBox.deselect("apple");
+		Assert.assertEquals("2:cherry,apricot", comboBox.getSelectedItemsCaption());
+	}
+
+	@Test
+	public void filtersCaptionsLikeTheBrowserWhenFilteringInTheBrowser() {
+		final TestComboBox<String> comboBox = new TestComboBox<>("TITLE", "other");
+		comboBox.setLocale(new Locale("tr"));
+
+		// converted with the Turkish locale, "TITLE" would not contain "ti"
+		comboBox.getRpc()
+				.selectAll("ti");
+		Assert.assertEquals(Collections.singleton("TITLE"), comboBox.getSelectedItems());
+	}
+
+	@Test
+	public void filtersCaptionsWithTheLocaleOnTheServer() {
+		final TestComboBox<String> comboBox = new TestComboBox<>("TITLE", "other");
+		comboBox.setClientSideFilteringThreshold(0);
+		comboBox.setLocale(new Locale("tr"));
+
+		comboBox.getRpc()
+				.selectAll("ti");
+		Assert.assertTrue(comboBox.getSelectedItems()
+				.isEmpty());
+		comboBox.getRpc()
+				.selectAll("t\u0131");
+		Assert.assertEquals(Collections.singleton("TITLE"), comboBox.getSelectedItems());
+
+		// also with the caption index
+		comboBox.deselectAll();
+		comboBox.setCaptionIndexEnabled(true);
+		comboBox.getRpc()
+				.selectAll("t\u0131");
+		Assert.assertEquals(Collections.singleton("TITLE"), comboBox.getSelectedItems());
+	}
+
+	@Test
+	public void selectsAndClearsAllMatchingItemsOfCallbackProviders() {
+		// more items than fetched at once
+		final String[] items = IntStream.range(0, 1100)
+				.mapToObj(i -> String.format("item %04d", i))
+				.toArray(String[]::new);
+		final TestComboBox<String> comboBox = new TestComboBox<>();
+		comboBox.setDataProvider(callbackProvider(items));
+		comboBox.setSelectionCaptionGenerator((count, captions) -> String.valueOf(count));
+		final List<SelectionDeltaEvent<String>> events = new ArrayList<>();
+		comboBox.addSelectionDeltaListener(events::add);
+
+		comboBox.getRpc()
+				.selectAll("item 0");
+		Assert.assertEquals(1000, comboBox.getSelectedItems()
+				.size());
+		Assert.assertTrue(comboBox.isSelected("item 0999"));
+		Assert.assertFalse(comboBox.isSelected("item 1000"));
+		Assert.assertEquals("1000", comboBox.getSelectedItemsCaption());
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals(1000, events.get(0)
+				.getAddedItems()
+				.size());
+		Assert.assertTrue(events.get(0)
+				.isUserOriginated());
+
+		comboBox.getRpc()
+				.clear("item 09");
+		Assert.assertEquals(900, comboBox.getSelectedItems()
+				.size());
+		Assert.assertFalse(comboBox.isSelected("item 0950"));
+		Assert.assertEquals("900", comboBox.getSelectedItemsCaption());
+		Assert.assertEquals(2, events.size());
+		Assert.assertEquals(100, events.get(1)
+				.getRemovedItems()
+				.size());
+		Assert.assertTrue(events.get(1)
+				.getAddedItems()
+				.isEmpty());
+	}
+
+	@Test
+	public void keepsItemsVersionWhileFiltering() {
+		final TestComboBox<String> comboBox = new TestComboBox<>("apple", "apricot", "banana");
+		final int itemsVersion = comboBox.getItemsVersion();
+
+		// the pages cached by the client stay valid
+		comboBox.getRpc()
+				.setFilter("a", 1);
+		comboBox.getRpc()
+				.setFilter("ab", 2);
+		comboBox.getRpc()
+				.setFilter("a", 3);
+		Assert.assertEquals(itemsVersion, comboBox.getItemsVersion());
+
+		// the rows change without the items changing
+		comboBox.setStyleGenerator(item -> "fruit");
+		Assert.assertTrue(itemsVersion != comboBox.getItemsVersion());
+	}
+}
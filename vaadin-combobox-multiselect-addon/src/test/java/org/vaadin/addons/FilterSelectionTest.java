@@ -0,0 +1,129 @@
+package org.vaadin.addons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vaadin.server.SerializablePredicate;
+
+public class FilterSelectionTest {
+
+	private final List<String> items = new ArrayList<>(Arrays.asList("apple", "apricot", "banana", "blueberry", "cherry"));
+
+	private final AtomicInteger fetches = new AtomicInteger();
+
+	private final Function<String, Stream<String>> fetcher = filter -> {
+		this.fetches.incrementAndGet();
+		return this.items.stream()
+				.filter(matcher(filter));
+	};
+
+	private static SerializablePredicate<String> matcher(final String filter) {
+		return item -> item.contains(filter == null ? "" : filter);
+	}
+
+	private static FilterSelection<String> empty() {
+		return new FilterSelection<>(item -> item);
+	}
+
+	private static FilterSelection<String> step(final FilterSelection<String> selection, final String filter, final boolean selected) {
+		return selection.withStep(filter, matcher(filter), selected);
+	}
+
+	@Test
+	public void selectsByLastMatchingStep() {
+		final FilterSelection<String> selection = step(step(empty(), "a", true), "ap", false);
+		Assert.assertEquals(new HashSet<>(Arrays.asList("banana")), selection.stream(this.fetcher)
+				.collect(Collectors.toSet()));
+		Assert.assertTrue(selection.contains("banana"));
+		Assert.assertFalse(selection.contains("apple"));
+		Assert.assertFalse(selection.contains("cherry"));
+	}
+
+	@Test
+	public void countsOncePerVersion() {
+		final FilterSelection<String> selection = step(empty(), "b", true);
+		Assert.assertEquals(2, selection.size(this.fetcher, 0));
+		Assert.assertEquals(2, selection.size(this.fetcher, 0));
+		Assert.assertEquals(1, this.fetches.get());
+
+		this.items.add("raspberry");
+		Assert.assertEquals(3, selection.size(this.fetcher, 1));
+		Assert.assertEquals(2, this.fetches.get());
+	}
+
+	@Test
+	public void keepsCountUpToDateFromExclusions() {
+		final FilterSelection<String> selection = step(empty(), "a", true);
+		Assert.assertEquals(3, selection.size(this.fetcher, 0));
+
+		final FilterSelection<String> excluded = selection.withExcluded("apple")
+				.withExcluded("cherry");
+		Assert.assertEquals(2, excluded.size(this.fetcher, 0));
+		final FilterSelection<String> included = excluded.withoutExcluded("apple");
+		Assert.assertEquals(3, included.size(this.fetcher, 0));
+		Assert.assertEquals(1, this.fetches.get());
+
+		Assert.assertEquals(included.stream(this.fetcher)
+				.count(), included.size(this.fetcher, 1));
+	}
+
+	@Test
+	public void dropsOverriddenSteps() {
+		FilterSelection<String> selection = empty();
+		for (int i = 0; i < 100; i++) {
+			selection = step(step(selection, "ap", true), "ap", false);
+		}
+		Assert.assertTrue(selection.isEmpty());
+
+		selection = step(step(step(selection, "b", false), "a", true), "", true);
+		Assert.assertEquals(5, selection.size(this.fetcher, 0));
+		Assert.assertTrue(step(selection, "", false).isEmpty());
+	}
+
+	@Test
+	public void dropsExclusionsOfRemovedItems() {
+		final FilterSelection<String> selection = step(empty(), "a", true).withExcluded("apple")
+				.withExcluded("banana");
+		this.items.remove("apple");
+
+		final FilterSelection<String> compacted = selection.withoutStaleExclusions(this.fetcher);
+		Assert.assertTrue(compacted.isExcluded("banana"));
+		Assert.assertFalse(compacted.isExcluded("apple"));
+		Assert.assertSame(compacted, compacted.withoutStaleExclusions(this.fetcher));
+		Assert.assertEquals(Collections.singletonList("apricot"), compacted.stream(this.fetcher)
+				.collect(Collectors.toList()));
+	}
+
+	@Test
+	public void excludesItemsById() {
+		final FilterSelection<String> selection = step(new FilterSelection<>(item -> item.toLowerCase()), "a", true).withExcluded("apPle");
+		Assert.assertFalse(selection.contains("apple"));
+		Assert.assertEquals(new HashSet<>(Arrays.asList("apricot", "banana")), selection.stream(this.fetcher)
+				.collect(Collectors.toSet()));
+
+		final FilterSelection<String> included = selection.withoutExcluded("APPLE");
+		Assert.assertTrue(included.contains("apple"));
+		Assert.assertEquals(3, included.size(this.fetcher, 0));
+	}
+
+	@Test
+	public void countsItemsSelectedTwiceOnce() {
+		final FilterSelection<String> selection = step(empty(), "a", true);
+		final FilterSelectionView<String> view = new FilterSelectionView<>(new HashSet<>(Arrays.asList("apple", "cherry")), selection,
+				this.fetcher::apply, 0);
+
+		Assert.assertEquals(4, view.size());
+		Assert.assertEquals(view.stream()
+				.count(), view.size());
+	}
+}
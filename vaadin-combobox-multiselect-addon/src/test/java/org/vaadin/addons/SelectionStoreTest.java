@@ -0,0 +1,105 @@
+package org.vaadin.addons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SelectionStoreTest {
+
+	private final SelectionStore<Integer> empty = SelectionStore.empty(item -> item);
+
+	@Test
+	public void keepsInsertionOrder() {
+		final SelectionStore<Integer> store = this.empty.withAll(Arrays.asList(42, 7, 1000, 3));
+		Assert.assertEquals(Arrays.asList(42, 7, 1000, 3), new ArrayList<>(store.asSet()));
+		Assert.assertEquals(Arrays.asList(42, 1000, 3), new ArrayList<>(store.without(7)
+				.asSet()));
+	}
+
+	@Test
+	public void previousStoreIsUnchanged() {
+		final SelectionStore<Integer> store = this.empty.withAll(range(0, 1000));
+		final SelectionStore<Integer> changed = store.without(500)
+				.with(2000);
+
+		Assert.assertEquals(1000, store.size());
+		Assert.assertTrue(store.contains(500));
+		Assert.assertFalse(store.contains(2000));
+		Assert.assertEquals(1000, changed.size());
+		Assert.assertFalse(changed.contains(500));
+		Assert.assertTrue(changed.contains(2000));
+	}
+
+	@Test
+	public void identifiesItemsById() {
+		final SelectionStore<String> store = SelectionStore.<String> empty(String::toLowerCase)
+				.with("Apple");
+		Assert.assertTrue(store.contains("APPLE"));
+		Assert.assertSame(store, store.with("apple"));
+		Assert.assertEquals(Arrays.asList("aPPle"), new ArrayList<>(store.withReplaced("aPPle")
+				.asSet()));
+		Assert.assertEquals(0, store.without("APPLE")
+				.size());
+	}
+
+	@Test
+	public void handlesHashCollisions() {
+		// "Aa" and "BB" have the same hash code
+		final SelectionStore<String> store = SelectionStore.<String> empty(item -> item)
+				.with("Aa")
+				.with("BB");
+		Assert.assertEquals(2, store.size());
+		Assert.assertTrue(store.contains("Aa"));
+		Assert.assertTrue(store.contains("BB"));
+		Assert.assertFalse(store.without("BB")
+				.contains("BB"));
+		Assert.assertTrue(store.without("BB")
+				.contains("Aa"));
+	}
+
+	@Test
+	public void diffReportsOnlyChanges() {
+		final SelectionStore<Integer> store = this.empty.withAll(range(0, 5000));
+		final SelectionStore<Integer> changed = store.withoutAll(Arrays.asList(10, 20))
+				.withAll(Arrays.asList(7000, 6000, 20));
+
+		final List<Integer> added = new ArrayList<>();
+		final Set<Integer> removed = new HashSet<>();
+		changed.diff(store, added::add, removed::add);
+
+		Assert.assertEquals(Arrays.asList(7000, 6000), added);
+		Assert.assertEquals(new HashSet<>(Arrays.asList(10)), removed);
+	}
+
+	@Test
+	public void returnsFirstItems() {
+		final SelectionStore<Integer> store = this.empty.withAll(Arrays.asList(42, 7, 1000, 3))
+				.without(7);
+		Assert.assertEquals(Arrays.asList(42, 1000), store.first(2));
+		Assert.assertEquals(Arrays.asList(42, 1000, 3), store.first(10));
+		Assert.assertEquals(Arrays.asList(), store.first(0));
+	}
+
+	@Test
+	public void removesMatchingItems() {
+		final SelectionStore<Integer> store = this.empty.withAll(range(0, 100))
+				.withoutIf(item -> item % 2 == 0);
+		Assert.assertEquals(50, store.size());
+		Assert.assertEquals(range(0, 100).stream()
+				.filter(item -> item % 2 != 0)
+				.collect(Collectors.toList()), new ArrayList<>(store.asSet()));
+	}
+
+	private static List<Integer> range(final int start, final int end) {
+		return IntStream.range(start, end)
+				.boxed()
+				.collect(Collectors.toList());
+	}
+}
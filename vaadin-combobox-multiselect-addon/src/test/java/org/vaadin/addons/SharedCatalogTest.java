@@ -0,0 +1,76 @@
+package org.vaadin.addons;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SharedCatalogTest {
+
+	@SuppressWarnings("unchecked")
+	private static <T> T serializeAndDeserialize(final T object) throws IOException, ClassNotFoundException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(object);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return (T) in.readObject();
+		}
+	}
+
+	@Test
+	public void dropsReloadsFinishingAfterLaterOnes() {
+		final List<Runnable> tasks = new ArrayList<>();
+		final ReloadableCatalog<String> catalog = new ReloadableCatalog<>(Arrays.asList("a"), String::toString, Locale.ROOT, tasks::add);
+		final AtomicInteger reloads = new AtomicInteger();
+		catalog.addReloadListener(reloads::incrementAndGet);
+
+		final CompletableFuture<Void> first = catalog.reload(Arrays.asList("b"));
+		final CompletableFuture<Void> second = catalog.reload(Arrays.asList("c"));
+		tasks.get(1)
+				.run();
+		tasks.get(0)
+				.run();
+
+		Assert.assertTrue(first.isDone());
+		Assert.assertTrue(second.isDone());
+		Assert.assertEquals(Collections.singletonList("c"), catalog.getItems());
+		Assert.assertEquals(1, reloads.get());
+	}
+
+	@Test
+	public void serializesReferencesToTheCatalog() throws IOException, ClassNotFoundException {
+		final SharedCatalog<String> catalog = new SharedCatalog<>(Arrays.asList("a", "b"), String::toUpperCase, Locale.ROOT);
+		final SharedCatalog.View<String> view = catalog.createView();
+
+		final SharedCatalog.View<String> deserialized = serializeAndDeserialize(view);
+		Assert.assertSame(catalog, deserialized.getCatalog());
+		Assert.assertTrue(deserialized.isCurrent());
+		Assert.assertSame(catalog, serializeAndDeserialize(catalog));
+	}
+
+	@Test
+	public void copiesReloadedItemsBeforeBuildingThem() {
+		final List<Runnable> tasks = new ArrayList<>();
+		final ReloadableCatalog<String> catalog = new ReloadableCatalog<>(Arrays.asList("a"), String::toString, Locale.ROOT, tasks::add);
+		final List<String> items = new ArrayList<>(Arrays.asList("b", "c"));
+
+		catalog.reload(items);
+		items.clear();
+		tasks.get(0)
+				.run();
+
+		Assert.assertEquals(Arrays.asList("b", "c"), catalog.getItems());
+	}
+}
@@ -0,0 +1,49 @@
+package org.vaadin.addons.client;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PageCacheTest {
+
+	private final PageCache<String> cache = new PageCache<>(2);
+
+	@Test
+	public void keepsPagesOfEarlierFilters() {
+		final List<String> matchingA = Arrays.asList("apple", "banana");
+		this.cache.put("a", 0, matchingA, 2);
+		this.cache.put("ab", 0, Arrays.asList("abc"), 1);
+
+		// the filter is shortened again, e.g. with backspace
+		final PageCache.Page<String> page = this.cache.get("a", 0);
+		Assert.assertNotNull(page);
+		Assert.assertEquals(matchingA, page.getSuggestions());
+		Assert.assertEquals(2, page.getTotalSuggestions());
+		Assert.assertNull(this.cache.get("a", 1));
+	}
+
+	@Test
+	public void dropsLeastRecentlyUsedPages() {
+		this.cache.put("a", 0, Arrays.asList("apple"), 1);
+		this.cache.put("b", 0, Arrays.asList("banana"), 1);
+		this.cache.get("a", 0);
+		this.cache.put("c", 0, Arrays.asList("cherry"), 1);
+
+		Assert.assertNotNull(this.cache.get("a", 0));
+		Assert.assertNull(this.cache.get("b", 0));
+		Assert.assertNotNull(this.cache.get("c", 0));
+	}
+
+	@Test
+	public void dropsPagesOfOtherItemsVersions() {
+		this.cache.setItemsVersion(1);
+		this.cache.put("a", 0, Arrays.asList("apple"), 1);
+		this.cache.setItemsVersion(1);
+		Assert.assertNotNull(this.cache.get("a", 0));
+
+		this.cache.setItemsVersion(2);
+		Assert.assertNull(this.cache.get("a", 0));
+	}
+}